@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.db.dao;
+
+import ch.cern.dbod.util.CommonConstants;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+/**
+ * Provides connections to the DBOD database to all the DAOs. The data source
+ * is looked up in JNDI only once, and can be replaced by any other data
+ * source (for example an embedded one, to use the DAOs outside the
+ * application server). It also keeps statistics of the connections borrowed.
+ */
+public final class ConnectionProvider {
+
+    /**
+     * Data source in use, looked up on first use if not set.
+     */
+    private static volatile DataSource dataSource;
+
+    /**
+     * Connections currently borrowed.
+     */
+    private static final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Number of connections borrowed.
+     */
+    private static final AtomicLong borrowCount = new AtomicLong();
+
+    /**
+     * Total and maximum time (in nanoseconds) waiting for the pool to return a connection.
+     */
+    private static final AtomicLong borrowTime = new AtomicLong();
+    private static final AtomicLong maxBorrowTime = new AtomicLong();
+
+    /**
+     * Total time (in nanoseconds) connections were held before being closed.
+     */
+    private static final AtomicLong holdTime = new AtomicLong();
+
+    /**
+     * Number of connections closed.
+     */
+    private static final AtomicLong closeCount = new AtomicLong();
+
+    private ConnectionProvider() {
+    }
+
+    /**
+     * Obtains a new connection from the pool.
+     * @return a connection to the database.
+     * @throws NamingException if the context cannot be found.
+     * @throws SQLException if the datasource cannot be created.
+     */
+    public static Connection getConnection() throws NamingException, SQLException {
+        DataSource source = getDataSource();
+        long start = System.nanoTime();
+        Connection connection = source.getConnection();
+        long elapsed = System.nanoTime() - start;
+        borrowCount.incrementAndGet();
+        borrowTime.addAndGet(elapsed);
+        long max = maxBorrowTime.get();
+        while (elapsed > max && !maxBorrowTime.compareAndSet(max, elapsed))
+            max = maxBorrowTime.get();
+        active.incrementAndGet();
+        return track(connection);
+    }
+
+    /**
+     * Gets the data source, looking it up in JNDI if it was not resolved yet.
+     * @return the data source.
+     * @throws NamingException if the context cannot be found.
+     */
+    private static DataSource getDataSource() throws NamingException {
+        DataSource source = dataSource;
+        if (source == null) {
+            synchronized (ConnectionProvider.class) {
+                source = dataSource;
+                if (source == null) {
+                    Context initContext = new InitialContext();
+                    Context envContext = (Context) initContext.lookup(CommonConstants.ENVIRONMENT_CONTEXT);
+                    source = (DataSource) envContext.lookup(CommonConstants.DATA_SOURCE_DBOD);
+                    dataSource = source;
+                }
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Sets the data source used by the DAOs, instead of the one in JNDI.
+     * @param source data source to use, or null to look it up again in JNDI.
+     */
+    public static void setDataSource(DataSource source) {
+        dataSource = source;
+    }
+
+    /**
+     * Wraps a connection to know when it is closed.
+     * @param connection connection borrowed from the pool.
+     * @return connection that updates the statistics when closed.
+     */
+    private static Connection track(final Connection connection) {
+        final long borrowed = System.nanoTime();
+        return (Connection) Proxy.newProxyInstance(ConnectionProvider.class.getClassLoader(), new Class<?>[] {Connection.class},
+                new InvocationHandler() {
+                    private boolean closed;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("close") && (args == null || args.length == 0)) {
+                            synchronized (this) {
+                                if (!closed) {
+                                    closed = true;
+                                    active.decrementAndGet();
+                                    closeCount.incrementAndGet();
+                                    holdTime.addAndGet(System.nanoTime() - borrowed);
+                                }
+                            }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Gets the number of connections currently borrowed by the DAOs.
+     * @return number of active connections.
+     */
+    public static int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Gets the number of idle connections in the pool, if the data source
+     * exposes it (DBCP and Tomcat pools do).
+     * @return number of idle connections, or -1 if it is not known.
+     */
+    public static int getIdle() {
+        DataSource source = dataSource;
+        if (source == null)
+            return -1;
+        for (String name : new String[] {"getNumIdle", "getIdle"}) {
+            try {
+                Object value = source.getClass().getMethod(name).invoke(source);
+                if (value instanceof Number)
+                    return ((Number) value).intValue();
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                //Not available in this data source
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of connections borrowed since the application started.
+     * @return number of connections borrowed.
+     */
+    public static long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Gets the average time waiting for the pool to return a connection.
+     * @return average wait time, in microseconds.
+     */
+    public static long getAverageBorrowTime() {
+        long count = borrowCount.get();
+        return count > 0 ? borrowTime.get() / count / 1000 : 0;
+    }
+
+    /**
+     * Gets the maximum time waiting for the pool to return a connection.
+     * @return maximum wait time, in microseconds.
+     */
+    public static long getMaxBorrowTime() {
+        return maxBorrowTime.get() / 1000;
+    }
+
+    /**
+     * Gets the average time connections are held by the DAOs.
+     * @return average hold time, in microseconds.
+     */
+    public static long getAverageHoldTime() {
+        long count = closeCount.get();
+        return count > 0 ? holdTime.get() / count / 1000 : 0;
+    }
+
+    /**
+     * Gets a summary of the statistics, to be logged.
+     * @return summary of the statistics.
+     */
+    public static String getStatistics() {
+        return "ACTIVE: " + getActive() + ", IDLE: " + getIdle() + ", BORROWED: " + getBorrowCount()
+                + ", AVG WAIT (us): " + getAverageBorrowTime() + ", MAX WAIT (us): " + getMaxBorrowTime()
+                + ", AVG HOLD (us): " + getAverageHoldTime();
+    }
+}
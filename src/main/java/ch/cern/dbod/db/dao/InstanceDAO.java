@@ -10,7 +10,8 @@
 package ch.cern.dbod.db.dao;
 
 import ch.cern.dbod.db.entity.*;
-import ch.cern.dbod.util.CommonConstants;
+import ch.cern.dbod.util.AsyncHelper;
+import ch.cern.dbod.util.AuthorizationCache;
 import ch.cern.dbod.util.RestHelper;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -24,12 +25,11 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
-import javax.sql.DataSource;
 import org.apache.http.ParseException;
 
 /**
@@ -46,10 +46,7 @@ public class InstanceDAO {
      * @throws SQLException if the datasource cannot be created.
      */
     private Connection getConnection() throws NamingException, SQLException {
-        Context initContext = new InitialContext();
-        Context envContext = (Context) initContext.lookup(CommonConstants.ENVIRONMENT_CONTEXT);
-        DataSource dataSource = (DataSource) envContext.lookup(CommonConstants.DATA_SOURCE_DBOD);
-        return dataSource.getConnection();
+        return ConnectionProvider.getConnection();
     }
 
     /**
@@ -69,12 +66,9 @@ public class InstanceDAO {
             
             for (Instance instance : instances) {
                 //Check if instance needs upgrade
-                if (upgrades != null) {
-                    String key = instance.getDbType() + "$" + instance.getCategory() + "$" + instance.getVersion();
-                    Upgrade upgrade = upgrades.get(key);
-                    if (upgrade != null) {
-                        instance.setUpgradeTo(upgrade.getVersionTo());
-                    }
+                Upgrade upgrade = UpgradeMatrix.find(upgrades, instance);
+                if (upgrade != null) {
+                    instance.setUpgradeTo(upgrade.getVersionTo());
                 }
             }
         } catch (IOException | IllegalStateException | ParseException ex) {
@@ -127,12 +121,9 @@ public class InstanceDAO {
 
             for (Instance instance : instances) {
                 //Check if instance needs upgrade
-                if (upgrades != null) {
-                    String key = instance.getDbType() + "$" + instance.getCategory() + "$" + instance.getVersion();
-                    Upgrade upgrade = upgrades.get(key);
-                    if (upgrade != null) {
-                        instance.setUpgradeTo(upgrade.getVersionTo());
-                    }
+                Upgrade upgrade = UpgradeMatrix.find(upgrades, instance);
+                if (upgrade != null) {
+                    instance.setUpgradeTo(upgrade.getVersionTo());
                 }
             }
         } catch (IOException | IllegalStateException | ParseException ex) {
@@ -150,34 +141,59 @@ public class InstanceDAO {
      * @return instance for the username and DB name specified.
      */
     public Instance selectByDbName(String dbName, Map<String, Upgrade> upgrades) {
-        Instance instance = null;
         try {
-            JsonObject object = RestHelper.getJsonObjectFromRestApi("api/v1/instance/" + dbName);
-            if (object == null)
-                return null;
-            
-            instance = RestHelper.fromJson(object.getAsJsonArray("response").get(0).getAsJsonObject(), Instance.class);
-            
-            JsonObject attributes = object.getAsJsonArray("response").get(0).getAsJsonObject().getAsJsonObject("attributes");
-            if (attributes != null) {
-                for (Entry<String, JsonElement> entry : attributes.entrySet()) {
-                    instance.setAttribute(entry.getKey(), entry.getValue().getAsString());
-                }
-            }
-            
-            //Check if instance needs upgrade
-            if (upgrades != null) {
-                String key = instance.getDbType() + "$" + instance.getCategory() + "$" + instance.getVersion();
-                Upgrade upgrade = upgrades.get(key);
-                if (upgrade != null) {
-                    instance.setUpgradeTo(upgrade.getVersionTo());
-                }
-            }
+            return findByDbName(dbName, upgrades);
         } catch (Exception ex) {
             Logger.getLogger(InstanceDAO.class.getName()).log(Level.SEVERE, "ERROR SELECTING INSTANCE FOR DB NAME " + dbName ,ex);
         }
+        return null;
+    }
+    
+    /**
+     * Select a specific instance by its DB name, throwing the errors of the API
+     * instead of returning null.
+     * @param dbName DB name of the instance.
+     * @param upgrades upgrades available.
+     * @return instance for the DB name specified, or null if it does not exist.
+     * @throws IOException if there is an error communicating with the API.
+     */
+    private Instance findByDbName(String dbName, Map<String, Upgrade> upgrades) throws IOException {
+        JsonObject object = RestHelper.getJsonObjectFromRestApi("api/v1/instance/" + dbName);
+        if (object == null)
+            return null;
+
+        Instance instance = RestHelper.fromJson(object.getAsJsonArray("response").get(0).getAsJsonObject(), Instance.class);
+
+        JsonObject attributes = object.getAsJsonArray("response").get(0).getAsJsonObject().getAsJsonObject("attributes");
+        if (attributes != null) {
+            for (Entry<String, JsonElement> entry : attributes.entrySet()) {
+                instance.setAttribute(entry.getKey(), entry.getValue().getAsString());
+            }
+        }
+
+        //Check if instance needs upgrade
+        Upgrade upgrade = UpgradeMatrix.find(upgrades, instance);
+        if (upgrade != null) {
+            instance.setUpgradeTo(upgrade.getVersionTo());
+        }
         return instance;
     }
+    
+    /**
+     * Selects an instance given its DB name in the background.
+     * @param dbName DB name of the instance.
+     * @param upgrades list of available upgrades.
+     * @return future holding the instance (null if it does not exist), or
+     * failing if the API could not be queried.
+     */
+    public Future<Instance> selectByDbNameAsync(final String dbName, final Map<String, Upgrade> upgrades) {
+        return AsyncHelper.submit(new Callable<Instance>() {
+            @Override
+            public Instance call() throws IOException {
+                return findByDbName(dbName, upgrades);
+            }
+        });
+    }
 
     /**
      * Inserts a new instance in the database. It also updates the slave attribute
@@ -300,6 +316,7 @@ public class InstanceDAO {
             deleteStatement.setString(2, instance.getOwner());
 
             deleteResult = deleteStatement.executeUpdate();
+            AuthorizationCache.invalidate(instance.getDbName());
         } catch (NamingException | SQLException ex) {
             Logger.getLogger(InstanceDAO.class.getName()).log(Level.SEVERE, "ERROR DELETING INSTANCE FOR USERNAME " + instance.getOwner() + " AND DB_NAME " + instance.getDbName(), ex);
         } finally {
@@ -344,6 +361,8 @@ public class InstanceDAO {
             updateResult = 0;
         } else {
             updateResult = 1;
+            //The owner or e-group may have changed
+            AuthorizationCache.invalidate(newInstance.getDbName());
         }
         
         return updateResult;
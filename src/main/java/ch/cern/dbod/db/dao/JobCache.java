@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.db.dao;
+
+import ch.cern.dbod.db.entity.Job;
+import ch.cern.dbod.util.CommonConstants;
+import ch.cern.dbod.util.ConfigLoader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of the logs and information of finished jobs, which never change.
+ * It is bounded by the memory used (not by the number of jobs), evicting the
+ * least recently used jobs first, and logs can be kept compressed.
+ */
+public final class JobCache {
+
+    /**
+     * Default size of the cache, in kilobytes.
+     */
+    private static final int DEFAULT_SIZE = 32768;
+
+    /**
+     * Logs shorter than this (in bytes) are not compressed.
+     */
+    private static final int COMPRESS_THRESHOLD = 1024;
+
+    /**
+     * Approximate memory used by an entry besides its log.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    /**
+     * Entries, by key, in access order.
+     */
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Memory used by the entries, in bytes.
+     */
+    private static long bytes;
+
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    private JobCache() {
+    }
+
+    /**
+     * Checks if a job is in a final state, so its log and information can be cached.
+     * @param job job to check.
+     * @return true if the job is finished.
+     */
+    public static boolean isFinished(Job job) {
+        return job != null && (CommonConstants.JOB_STATE_FINISHED_OK.equals(job.getState())
+                || CommonConstants.JOB_STATE_FINISHED_FAIL.equals(job.getState())
+                || CommonConstants.JOB_STATE_FINISHED_WARNING.equals(job.getState()));
+    }
+
+    /**
+     * Gets the information of a finished job.
+     * @param dbName DB name of the instance.
+     * @param jobId ID of the job.
+     * @return job, or null if it is not in the cache.
+     */
+    public static Job getJob(String dbName, int jobId) {
+        Entry entry = get("job:" + dbName + "/" + jobId);
+        return entry != null ? entry.job : null;
+    }
+
+    /**
+     * Stores the information of a job, if it is finished. Jobs carrying their
+     * log are not stored, as the log would not be accounted for (use putLog).
+     * @param dbName DB name of the instance.
+     * @param job job to store.
+     */
+    public static void putJob(String dbName, Job job) {
+        if (isFinished(job) && job.getLog() == null)
+            put("job:" + dbName + "/" + job.getId(), new Entry(job, null, false, ENTRY_OVERHEAD));
+    }
+
+    /**
+     * Gets the log of a finished job.
+     * @param dbName DB name of the instance.
+     * @param jobId ID of the job.
+     * @return log, or null if it is not in the cache.
+     */
+    public static String getLog(String dbName, int jobId) {
+        Entry entry = get("log:" + dbName + "/" + jobId);
+        if (entry == null)
+            return null;
+        if (!entry.compressed)
+            return new String(entry.log, StandardCharsets.UTF_8);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(entry.log))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(entry.log.length * 4);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0)
+                out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            Logger.getLogger(JobCache.class.getName()).log(Level.WARNING, "ERROR DECOMPRESSING CACHED LOG FOR JOB " + jobId, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the log of a job, if it is finished.
+     * @param dbName DB name of the instance.
+     * @param job job the log belongs to.
+     * @param log log to store.
+     */
+    public static void putLog(String dbName, Job job, String log) {
+        if (!isFinished(job) || log == null)
+            return;
+        byte[] data = log.getBytes(StandardCharsets.UTF_8);
+        boolean compressed = false;
+        if (data.length >= COMPRESS_THRESHOLD && ConfigLoader.getIntProperty(CommonConstants.JOB_CACHE_COMPRESS, 1) == 1) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+            try (OutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(data);
+            } catch (IOException ex) {
+                Logger.getLogger(JobCache.class.getName()).log(Level.WARNING, "ERROR COMPRESSING LOG FOR JOB " + job.getId(), ex);
+                return;
+            }
+            data = out.toByteArray();
+            compressed = true;
+        }
+        put("log:" + dbName + "/" + job.getId(), new Entry(null, data, compressed, ENTRY_OVERHEAD + data.length));
+    }
+
+    private static synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null)
+            hits++;
+        else
+            misses++;
+        return entry;
+    }
+
+    private static synchronized void put(String key, Entry entry) {
+        long maxBytes = ConfigLoader.getIntProperty(CommonConstants.JOB_CACHE_SIZE, DEFAULT_SIZE) * 1024L;
+        if (entry.size > maxBytes)
+            return;
+        Entry previous = entries.put(key, entry);
+        if (previous != null)
+            bytes -= previous.size;
+        bytes += entry.size;
+        //Evict the least recently used entries
+        for (Iterator<Entry> it = entries.values().iterator(); bytes > maxBytes && it.hasNext();) {
+            bytes -= it.next().size;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all the entries. Called when the application is undeployed.
+     */
+    public static synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Gets the ratio of lookups found in the cache.
+     * @return hit rate, between 0 and 1.
+     */
+    public static synchronized double getHitRate() {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    public static synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the memory used by the cache.
+     * @return approximate memory used, in bytes.
+     */
+    public static synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets a summary of the statistics, to be logged.
+     * @return summary of the statistics.
+     */
+    public static synchronized String getStatistics() {
+        return "ENTRIES: " + entries.size() + ", BYTES: " + bytes + ", HITS: " + hits + ", MISSES: " + misses
+                + ", HIT RATE: " + String.format("%.2f", getHitRate()) + ", EVICTIONS: " + evictions;
+    }
+
+    /**
+     * Cached job information or log.
+     */
+    private static class Entry {
+        final Job job;
+        final byte[] log;
+        final boolean compressed;
+        final long size;
+
+        Entry(Job job, byte[] log, boolean compressed, long size) {
+            this.job = job;
+            this.log = log;
+            this.compressed = compressed;
+            this.size = size;
+        }
+    }
+}
@@ -9,25 +9,32 @@
 
 package ch.cern.dbod.db.dao;
 
+import ch.cern.dbod.db.entity.BackupSchedule;
 import ch.cern.dbod.db.entity.CommandParam;
 import ch.cern.dbod.db.entity.Instance;
 import ch.cern.dbod.db.entity.Job;
+import ch.cern.dbod.db.entity.JobFilter;
+import ch.cern.dbod.db.entity.JobRequest;
+import ch.cern.dbod.util.AsyncHelper;
 import ch.cern.dbod.util.CommonConstants;
 import ch.cern.dbod.util.RestHelper;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import java.io.IOException;
 import java.sql.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
-import javax.sql.DataSource;
 import org.apache.http.ParseException;
 
 /**
@@ -37,6 +44,41 @@ import org.apache.http.ParseException;
  */
 public class JobDAO {
 
+    /**
+     * Maximum number of instances whose backup schedules are selected in a
+     * single query (each one adds two job names to the IN list, which is
+     * limited to 1000 elements).
+     */
+    private static final int SCHEDULE_QUERY_SIZE = 400;
+
+    /**
+     * Maximum number of requests made to fill a page of jobs, when the API
+     * returns jobs that do not meet the filter.
+     */
+    private static final int MAX_PAGE_REQUESTS = 10;
+
+    /**
+     * Number of last jobs selected (and paged in memory) if the API does not
+     * support the cursor of the pages.
+     */
+    private static final int FALLBACK_JOBS = 500;
+
+    /**
+     * Set when the API returns jobs that are not older than the cursor of the
+     * page, i.e. it ignores before_date and before_id.
+     */
+    private static volatile boolean cursorIgnored;
+
+    /**
+     * Orders jobs from the most recent to the oldest.
+     */
+    private static final Comparator<Job> NEWEST_FIRST = new Comparator<Job>() {
+        @Override
+        public int compare(Job job1, Job job2) {
+            return compareKeys(job2, job1);
+        }
+    };
+
     /**
      * Date formatter date and time
      */
@@ -49,10 +91,7 @@ public class JobDAO {
      * @throws SQLException if the datasource cannot be created.
      */
     private Connection getConnection() throws NamingException, SQLException {
-        Context initContext = new InitialContext();
-        Context envContext = (Context) initContext.lookup(CommonConstants.ENVIRONMENT_CONTEXT);
-        DataSource dataSource = (DataSource) envContext.lookup(CommonConstants.DATA_SOURCE_DBOD);
-        return dataSource.getConnection();
+        return ConnectionProvider.getConnection();
     }
 
     /**
@@ -71,6 +110,20 @@ public class JobDAO {
         }
         return jobs;
     }
+    
+    /**
+     * Obtains the list of jobs for a specific instance in the background.
+     * @param instance DBOD instance to get the jobs from.
+     * @return future holding the list of jobs for the specified instance.
+     */
+    public Future<List<Job>> selectByInstanceAsync(final Instance instance) {
+        return AsyncHelper.submit(new Callable<List<Job>>() {
+            @Override
+            public List<Job> call() {
+                return selectByInstance(instance);
+            }
+        });
+    }
 
     /**
      * Selects a log for a specific job.
@@ -79,10 +132,17 @@ public class JobDAO {
      * @return String containing the job log.
      */
     public String selectLogByJob(String instance, Job job) {
+        //Logs of finished jobs never change
+        if (JobCache.isFinished(job)) {
+            String cached = JobCache.getLog(instance, job.getId());
+            if (cached != null)
+                return cached;
+        }
         String log = "";
         try {
             JsonObject json = RestHelper.getJsonObjectFromRestApi("api/v1/instance/" + instance + "/job/" + job.getId());
             log = json.getAsJsonObject("response").get("log").getAsString();
+            JobCache.putLog(instance, job, log);
         } catch (ParseException ex) {
             Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR SELECTING LOG FOR INSTANCE: " + instance, ex);
         }
@@ -95,15 +155,48 @@ public class JobDAO {
         return log;
     }
 
+    /**
+     * Selects a job and its log with a single request, to follow the log of a
+     * running job without requesting the same resource twice.
+     * @param instance DB name of the instance.
+     * @param jobId ID of the job.
+     * @return job, with its log, or null in case of error.
+     */
+    public Job selectJobWithLog(String instance, int jobId) {
+        try {
+            JsonObject json = RestHelper.getJsonObjectFromRestApi("api/v1/instance/" + instance + "/job/" + jobId);
+            if (json == null)
+                return null;
+            JsonElement response = json.get("response");
+            JsonObject object = response.isJsonArray() ? response.getAsJsonArray().get(0).getAsJsonObject() : response.getAsJsonObject();
+            Job job = RestHelper.fromJson(object, Job.class);
+            //Cache the job before setting its log, which is cached (compressed) on its own
+            JobCache.putJob(instance, job);
+            job = RestHelper.fromJson(object, Job.class);
+            JsonElement log = object.get("log");
+            job.setLog(log != null && !log.isJsonNull() ? log.getAsString() : "");
+            JobCache.putLog(instance, job, job.getLog());
+            return job;
+        } catch (Exception ex) {
+            Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "Error getting job " + jobId + " for instance: " + instance, ex);
+        }
+        return null;
+    }
+
     /**
      * Selects an specific log.
      * @param jobId
      * @return Selected job.
      */
     public Job selectJob(String instance, int jobId) {
+        Job cached = JobCache.getJob(instance, jobId);
+        if (cached != null)
+            return cached;
         Logger.getLogger(JobDAO.class.getName()).log(Level.INFO, String.format("SELECTING JOB: %d", jobId));
         try {
-            return RestHelper.getObjectFromRestApi("api/v1/instance/" + instance + "/job/" + jobId, Job.class, "response");
+            Job job = RestHelper.getObjectFromRestApi("api/v1/instance/" + instance + "/job/" + jobId, Job.class, "response");
+            JobCache.putJob(instance, job);
+            return job;
         } catch (Exception ex) {
             Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "Error getting job " + jobId + " for instance: " + instance, ex);
         } finally {
@@ -117,22 +210,112 @@ public class JobDAO {
      * @return list of last executed jobs.
      */
     public List<Job> selectLastJobs(String username) {
+        return selectLastJobs(username, null, null, 500);
+    }
+
+    /**
+     * Obtains a page of executed jobs, from the most recent to the oldest.
+     * Pages are delimited by the creation date and ID of the last job of the
+     * previous page (sent to the API as before_date and before_id), so every
+     * page costs the same regardless of how far back it is. If the API ignores
+     * the cursor, the last jobs are selected at once and paged in memory. The
+     * filter is sent to the API (except the command, which is matched on its
+     * label) and checked again on the jobs received. If some of them do not
+     * meet it, older jobs are requested until the page is full.
+     * @param username username of the admin requesting the jobs.
+     * @param filter criteria the jobs must meet, or null to select all jobs.
+     * @param after last job of the previous page, or null to select the first page.
+     * @param size maximum number of jobs to select.
+     * @return jobs older than the given one, ordered by creation date and ID (descending).
+     */
+    public List<Job> selectLastJobs(String username, JobFilter filter, Job after, int size) {
         ArrayList<Job> jobs = new ArrayList<>();
         try {
             JsonObject authHeader = new JsonObject();
             authHeader.addProperty("owner", username);
             authHeader.addProperty("groups", "[]");
             authHeader.addProperty("admin", true);
-            HashMap<String, String> params = new HashMap<>();
-            params.put("size", "500");
-            return RestHelper.getObjectListFromRestApi("api/v1/job", params, Job.class, authHeader.toString(), "response");
+            DateFormat apiFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+            Job cursor = cursorIgnored ? null : after;
+            int pageSize = cursorIgnored ? FALLBACK_JOBS : size;
+            for (int request = 0; request < MAX_PAGE_REQUESTS && jobs.size() < size; request++) {
+                HashMap<String, String> params = new HashMap<>();
+                params.put("size", String.valueOf(pageSize));
+                if (filter != null) {
+                    addParam(params, "state", filter.getState());
+                    addParam(params, "requester", filter.getRequester());
+                    addParam(params, "type", filter.getInstanceType());
+                }
+                if (cursor != null && cursor.getCreationDate() != null) {
+                    params.put("before_date", apiFormatter.format(cursor.getCreationDate()));
+                    params.put("before_id", String.valueOf(cursor.getId()));
+                }
+                List<Job> received = RestHelper.getObjectListFromRestApi("api/v1/job", params, Job.class, authHeader.toString(), "response");
+                if (received == null)
+                    break;
+                if (cursor != null && !isOlder(received, cursor)) {
+                    //The API ignored the cursor, select the last jobs again and page them here
+                    Logger.getLogger(JobDAO.class.getName()).log(Level.WARNING, "JOB API IGNORES THE PAGE CURSOR, PAGING THE LAST {0} JOBS IN MEMORY", FALLBACK_JOBS);
+                    cursorIgnored = true;
+                    jobs.clear();
+                    cursor = null;
+                    pageSize = FALLBACK_JOBS;
+                    continue;
+                }
+                Job oldest = null;
+                for (Job job : received) {
+                    if (oldest == null || compareKeys(job, oldest) < 0)
+                        oldest = job;
+                    //Without cursor, skip the jobs of the previous pages
+                    if ((filter == null || filter.accepts(job)) && (after == null || compareKeys(job, after) < 0))
+                        jobs.add(job);
+                }
+                //Stop when the API has no more jobs (or the cursor cannot be used)
+                if (oldest == null || received.size() < pageSize || cursorIgnored)
+                    break;
+                cursor = oldest;
+            }
+            Collections.sort(jobs, NEWEST_FIRST);
+            if (jobs.size() > size)
+                jobs.subList(size, jobs.size()).clear();
         } catch (Exception ex) {
             Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "Error getting last executed jobs", ex);
-        } finally {
-            
         }
         return jobs;
     }
+
+    /**
+     * Checks if all the jobs received are older than the cursor of the page.
+     * @param received jobs received from the API.
+     * @param cursor cursor sent to the API.
+     * @return true if the API applied the cursor.
+     */
+    private static boolean isOlder(List<Job> received, Job cursor) {
+        for (Job job : received) {
+            if (compareKeys(job, cursor) >= 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static void addParam(HashMap<String, String> params, String name, String value) {
+        if (value != null && !value.isEmpty())
+            params.put(name, value);
+    }
+
+    /**
+     * Compares two jobs by their keys in the job history (creation date and ID).
+     * @param job1 first job.
+     * @param job2 second job.
+     * @return negative, zero or positive if the first job is older, the same or newer.
+     */
+    public static int compareKeys(Job job1, Job job2) {
+        long date1 = job1.getCreationDate() != null ? job1.getCreationDate().getTime() : 0;
+        long date2 = job2.getCreationDate() != null ? job2.getCreationDate().getTime() : 0;
+        if (date1 != date2)
+            return date1 < date2 ? -1 : 1;
+        return Integer.compare(job1.getId(), job2.getId());
+    }
     
     /**
      * Inserts a job in the database with a log. This method is used to insert
@@ -319,6 +502,170 @@ public class JobDAO {
         return updateInstanceResult;
     }
 
+    /**
+     * Inserts several jobs in the database in one transaction, batching the
+     * inserts of their parameters and the updates of the instances. The jobs
+     * are inserted one by one, as generated keys are not reliably returned
+     * after a batch by every driver (e.g. Oracle). Jobs whose instance cannot
+     * be updated are removed before committing, so they do not prevent the
+     * rest from being inserted.
+     * @param requests jobs to be inserted, with their parameters.
+     * @return for each job (in the same order), 1 if the operation was successful, 0 otherwise.
+     */
+    public int[] insertAll(List<JobRequest> requests) {
+        int[] results = new int[requests.size()];
+        if (requests.isEmpty())
+            return results;
+        Connection connection = null;
+        PreparedStatement insertJobStatement = null;
+        PreparedStatement insertParamsStatement = null;
+        PreparedStatement updateInstanceStatement = null;
+        PreparedStatement deleteParamsStatement = null;
+        PreparedStatement deleteJobStatement = null;
+        try {
+            //Get connection
+            connection = getConnection();
+            //Set autocommit to false to execute multiple queries and rollback in case something goes wrong
+            connection.setAutoCommit(false);
+            //Prepare query for the prepared statement (to avoid SQL injection)
+            String insertQuery = "INSERT INTO job (instance_id, command_name, creation_date, requester, admin_action, state)"
+                            + " VALUES (?, ?, ?, ?, ?, ?)";
+            //Ask for the ID column by name, which is also supported by Oracle
+            insertJobStatement = connection.prepareStatement(insertQuery, new String[] {"id"});
+            for (JobRequest request : requests) {
+                Job job = request.getJob();
+                //Assign values to variables
+                insertJobStatement.setInt(1, job.getInstance_id());
+                insertJobStatement.setString(2, job.getCommandName());
+                insertJobStatement.setTimestamp(3, new java.sql.Timestamp(job.getCreationDate().getTime()));
+                insertJobStatement.setString(4, job.getRequester());
+                insertJobStatement.setInt(5, job.getAdminAction());
+                insertJobStatement.setString(6, job.getState());
+                //Execute query, any failure rolls back all the jobs
+                if (insertJobStatement.executeUpdate() == PreparedStatement.EXECUTE_FAILED) {
+                    connection.rollback();
+                    return results;
+                }
+                //Set the ID generated for the job
+                try (ResultSet rs = insertJobStatement.getGeneratedKeys()) {
+                    if (!rs.next()) {
+                        Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "NO ID GENERATED FOR JOB OF INSTANCE {0}", job.getInstance_id());
+                        connection.rollback();
+                        return results;
+                    }
+                    job.setId(rs.getInt(1));
+                }
+            }
+            
+            //Insert params of all the jobs
+            String paramsQuery = "INSERT INTO command_param (job_id, name, value) VALUES (?, ?, ?)";
+            insertParamsStatement = connection.prepareStatement(paramsQuery);
+            boolean hasParams = false;
+            for (JobRequest request : requests) {
+                if (request.getParams() != null) {
+                    for (CommandParam commandParam : request.getParams()) {
+                        //Assign values to variables
+                        insertParamsStatement.setInt(1, request.getJob().getId());
+                        insertParamsStatement.setString(2, commandParam.getName());
+                        insertParamsStatement.setString(3, commandParam.getValue());
+                        insertParamsStatement.addBatch();
+                        hasParams = true;
+                    }
+                }
+            }
+            if (hasParams && !isSuccessful(insertParamsStatement.executeBatch())) {
+                connection.rollback();
+                return results;
+            }
+            
+            //Update instances
+            String updateQuery = "UPDATE instance SET state = '" + CommonConstants.INSTANCE_STATE_JOB_PENDING + "' WHERE id = ?";
+            updateInstanceStatement = connection.prepareStatement(updateQuery);
+            for (JobRequest request : requests) {
+                updateInstanceStatement.setInt(1, request.getJob().getInstance_id());
+                updateInstanceStatement.addBatch();
+            }
+            int[] updateResults = updateInstanceStatement.executeBatch();
+            
+            //Remove the jobs whose instance could not be updated
+            deleteParamsStatement = connection.prepareStatement("DELETE FROM command_param WHERE job_id = ?");
+            deleteJobStatement = connection.prepareStatement("DELETE FROM job WHERE id = ?");
+            boolean hasFailed = false;
+            for (int i = 0; i < requests.size(); i++) {
+                //SUCCESS_NO_INFO means the driver does not report the rows updated
+                if (updateResults[i] > 0 || updateResults[i] == PreparedStatement.SUCCESS_NO_INFO) {
+                    results[i] = 1;
+                }
+                else {
+                    deleteParamsStatement.setInt(1, requests.get(i).getJob().getId());
+                    deleteParamsStatement.addBatch();
+                    deleteJobStatement.setInt(1, requests.get(i).getJob().getId());
+                    deleteJobStatement.addBatch();
+                    hasFailed = true;
+                    Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR UPDATING INSTANCE {0} FOR BATCHED JOB", requests.get(i).getJob().getInstance_id());
+                }
+            }
+            if (hasFailed) {
+                deleteParamsStatement.executeBatch();
+                deleteJobStatement.executeBatch();
+            }
+            
+            //Commit queries
+            connection.commit();
+        }
+        catch (NamingException ex) {
+            Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR INSERTING " + requests.size() + " JOBS", ex);
+        }
+        catch (SQLException ex) {
+            try {
+                //Rollback updates
+                connection.rollback();
+            }
+            catch (SQLException ex1) {
+                Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR INSERTING " + requests.size() + " JOBS", ex1);
+            }
+            Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR INSERTING " + requests.size() + " JOBS", ex);
+            results = new int[requests.size()];
+        }
+        finally {
+            try {
+                insertJobStatement.close();
+            } catch (Exception e) {}
+            try {
+                insertParamsStatement.close();
+            } catch (Exception e) {}
+            try {
+                updateInstanceStatement.close();
+            } catch (Exception e) {}
+            try {
+                deleteParamsStatement.close();
+            } catch (Exception e) {}
+            try {
+                deleteJobStatement.close();
+            } catch (Exception e) {}
+            try {
+                connection.setAutoCommit(true);
+            } catch (Exception e) {}
+            try {
+                connection.close();
+            } catch (Exception e) {}
+        }
+        return results;
+    }
+    
+    /**
+     * Checks the results of a batch.
+     * @param results update counts returned by the batch.
+     * @return true if no statement in the batch failed.
+     */
+    private boolean isSuccessful(int[] results) {
+        for (int result : results) {
+            if (result == PreparedStatement.EXECUTE_FAILED)
+                return false;
+        }
+        return true;
+    }
+
     /**
      * Creates a scheduled backup.
      * @param instance instance to enable backups on.
@@ -419,78 +766,89 @@ public class JobDAO {
     }
     
     /**
-     * Obtains the hours interval for the scheduled backups of a given instance.
-     * @param instance DBOD instance to get the interval of.
-     * @return interval, in hours, for the scheduled backups. 0 in case scheduled backups are not enabled.
+     * Obtains the scheduled backups (automatic and to tape) of a given instance.
+     * @param instance DBOD instance to get the schedule of.
+     * @return schedule of the backups of the instance, with nothing enabled in case of error.
      */
-    public int getBackupInterval(Instance instance) {
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        int interval = 0;
-        try {
-            //Get connection
-            connection = getConnection();
-            //Prepare query for the prepared statement (to avoid SQL injection)
-            String query = "SELECT repeat_interval"
-                            + " FROM user_scheduler_jobs"
-                            + " WHERE job_name = ?";
-            statement = connection.prepareStatement(query);
-            //Assign values to variables
-            statement.setString(1, instance.getDbName() + "_BACKUP");
-            //Execute query
-            result = statement.executeQuery();
-
-            //Parse the int to return
-            if (result.next()) {
-                String intervalStr = result.getString(1);
-                interval = Integer.parseInt(intervalStr.substring(intervalStr.indexOf("INTERVAL=") + 9));
-            }
-        } catch (NamingException | SQLException ex) {
-            Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR SELECTING BACKUP INTERVAL FOR USERNAME " + instance.getOwner() + " AND DB_NAME " + instance.getDbName(), ex);
-        } finally {
-            try {
-                result.close();
-            } catch (Exception e) {}
-            try {
-                statement.close();
-            } catch (Exception e) {}
-            try {
-                connection.close();
-            } catch (Exception e) {}
-        }
-        return interval;
+    public BackupSchedule getBackupSchedule(Instance instance) {
+        List<Instance> instances = new ArrayList<>(1);
+        instances.add(instance);
+        return getBackupSchedules(instances).get(instance.getDbName());
     }
-    
+
     /**
-     * Checks automatic backups start date.
-     * @param instance DBOD instance to get the start date.
-     * @return start date for backups for the given instance, null otherwise.
+     * Obtains the scheduled backups (automatic and to tape) of a list of
+     * instances, querying the schedules of all of them at once.
+     * @param instances DBOD instances to get the schedules of.
+     * @return schedules of the backups, by DB name. Every instance has a schedule,
+     * with nothing enabled if it has no scheduled backups or in case of error.
      */
-    public java.util.Date getBackupStartDate(Instance instance) {
+    public Map<String, BackupSchedule> getBackupSchedules(List<Instance> instances) {
+        Map<String, BackupSchedule> schedules = new HashMap<>(instances.size() * 2);
+        for (Instance instance : instances)
+            schedules.put(instance.getDbName(), new BackupSchedule(instance.getDbName()));
+        List<String> dbNames = new ArrayList<>(schedules.keySet());
+        if (dbNames.isEmpty())
+            return schedules;
+
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet result = null;
-        java.util.Date date = null;
         try {
             //Get connection
             connection = getConnection();
-            //Prepare query for the prepared statement (to avoid SQL injection)
-            String query = "SELECT start_date"
-                            + " FROM user_scheduler_jobs"
-                            + " WHERE job_name = ?";
-            statement = connection.prepareStatement(query);
-            //Assign values to variables
-            statement.setString(1, instance.getDbName() + "_BACKUP");
-            //Execute query
-            result = statement.executeQuery();
+            for (int from = 0; from < dbNames.size(); from += SCHEDULE_QUERY_SIZE) {
+                List<String> chunk = dbNames.subList(from, Math.min(from + SCHEDULE_QUERY_SIZE, dbNames.size()));
+                //Prepare query for the prepared statement (to avoid SQL injection)
+                StringBuilder query = new StringBuilder("SELECT job_name, repeat_interval, start_date"
+                                + " FROM user_scheduler_jobs"
+                                + " WHERE job_name IN (");
+                for (int i = 0; i < chunk.size() * 2; i++)
+                    query.append(i == 0 ? "?" : ", ?");
+                query.append(")");
+                statement = connection.prepareStatement(query.toString());
+                //Assign values to variables
+                Map<String, String> jobNames = new HashMap<>(chunk.size() * 4);
+                int index = 1;
+                for (String dbName : chunk) {
+                    statement.setString(index++, dbName + "_BACKUP");
+                    statement.setString(index++, dbName + "_BACKUP_TO_TAPE");
+                    jobNames.put(dbName + "_BACKUP", dbName);
+                    jobNames.put(dbName + "_BACKUP_TO_TAPE", dbName);
+                }
+                //Execute query
+                result = statement.executeQuery();
 
-            //Instantiate date object
-            if (result.next()) {
-                date = new java.util.Date(result.getTimestamp(1).getTime());
+                //Fill the schedules
+                while (result.next()) {
+                    String jobName = result.getString(1);
+                    BackupSchedule schedule = schedules.get(jobNames.get(jobName));
+                    if (schedule == null)
+                        continue;
+                    Timestamp startDate = result.getTimestamp(3);
+                    if (jobName.equals(schedule.getDbName() + "_BACKUP")) {
+                        //A malformed interval only disables the schedule of this instance
+                        String intervalStr = result.getString(2);
+                        try {
+                            if (intervalStr == null)
+                                throw new NumberFormatException("null interval");
+                            schedule.setInterval(Integer.parseInt(intervalStr.substring(intervalStr.indexOf("INTERVAL=") + 9)));
+                        } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+                            Logger.getLogger(JobDAO.class.getName()).log(Level.WARNING, "ERROR PARSING BACKUP INTERVAL '" + intervalStr + "' FOR INSTANCE " + schedule.getDbName(), ex);
+                            continue;
+                        }
+                        if (startDate != null)
+                            schedule.setStartDate(new java.util.Date(startDate.getTime()));
+                    }
+                    else if (startDate != null) {
+                        schedule.setToTapeStartDate(new java.util.Date(startDate.getTime()));
+                    }
+                }
+                result.close();
+                statement.close();
             }
-        } catch (NamingException | SQLException ex) {
-            Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR SELECTING BACKUP START DATE FOR USERNAME " + instance.getOwner() + " AND DB_NAME " + instance.getDbName(), ex);
+        } catch (NamingException | SQLException | RuntimeException ex) {
+            Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR SELECTING BACKUP SCHEDULES FOR " + dbNames.size() + " INSTANCES", ex);
         } finally {
             try {
                 result.close();
@@ -502,7 +860,7 @@ public class JobDAO {
                 connection.close();
             } catch (Exception e) {}
         }
-        return date;
+        return schedules;
     }
     
     /**
@@ -610,47 +968,4 @@ public class JobDAO {
         else
             return false;
     }
-    
-    /**
-     * Checks if backups to tape are enabled or disabled, and returns the start date.
-     * @param instance DBOD instance to get the start date of.
-     * @return start date for backups to tape for the given instance, null otherwise.
-     */
-    public java.util.Date getBackupToTapeStartDate(Instance instance) {
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet result = null;
-        java.util.Date date = null;
-        try {
-            //Get connection
-            connection = getConnection();
-            //Prepare query for the prepared statement (to avoid SQL injection)
-            String query = "SELECT start_date"
-                            + " FROM user_scheduler_jobs"
-                            + " WHERE job_name = ?";
-            statement = connection.prepareStatement(query);
-            //Assign values to variables
-            statement.setString(1, instance.getDbName() + "_BACKUP_TO_TAPE");
-            //Execute query
-            result = statement.executeQuery();
-
-            //Instantiate instance objects
-            if (result.next()) {
-                date = new java.util.Date(result.getTimestamp(1).getTime());
-            }
-        } catch (NamingException | SQLException ex) {
-            Logger.getLogger(JobDAO.class.getName()).log(Level.SEVERE, "ERROR SELECTING BACKUP TO TAPE ENABLED FOR USERNAME " + instance.getOwner() + " AND DB_NAME " + instance.getDbName(), ex);
-        } finally {
-            try {
-                result.close();
-            } catch (Exception e) {}
-            try {
-                statement.close();
-            } catch (Exception e) {}
-            try {
-                connection.close();
-            } catch (Exception e) {}
-        }
-        return date;
-    }
 }
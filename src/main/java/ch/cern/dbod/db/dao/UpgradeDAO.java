@@ -10,18 +10,18 @@
 package ch.cern.dbod.db.dao;
 
 import ch.cern.dbod.db.entity.Upgrade;
+import ch.cern.dbod.db.entity.UpgradeMatrix;
 import ch.cern.dbod.util.CommonConstants;
+import ch.cern.dbod.util.ConfigLoader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.naming.Context;
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
-import javax.sql.DataSource;
 
 /**
  * DAO for upgrade objects.
@@ -29,6 +29,16 @@ import javax.sql.DataSource;
  */
 public class UpgradeDAO {
     
+    /**
+     * Default time (in seconds) the upgrades are kept in memory.
+     */
+    private static final int DEFAULT_CACHE_TTL = 600;
+    
+    /**
+     * Upgrades currently in memory. Replaced as a whole when they change or expire.
+     */
+    private static final AtomicReference<CachedUpgrades> cache = new AtomicReference<>();
+    
     /**
      * Obtains a new connection from the pool.
      * @return a connection to the database.
@@ -36,22 +46,49 @@ public class UpgradeDAO {
      * @throws SQLException if the datasource cannot be created.
      */
     private Connection getConnection() throws NamingException, SQLException {
-        Context initContext = new InitialContext();
-        Context envContext = (Context) initContext.lookup(CommonConstants.ENVIRONMENT_CONTEXT);
-        DataSource dataSource = (DataSource) envContext.lookup(CommonConstants.DATA_SOURCE_DBOD);
-        return dataSource.getConnection();
+        return ConnectionProvider.getConnection();
+    }
+    
+    /**
+     * Selects all the upgrades available. They are kept in memory and only
+     * read again from the database when they are modified or expire.
+     * @return matrix of all the upgrades in the database.
+     */
+    public UpgradeMatrix selectAll() {
+        CachedUpgrades cached = cache.get();
+        if (cached != null && !cached.isExpired())
+            return cached.matrix;
+        
+        synchronized (cache) {
+            //Another thread may have reloaded them while waiting
+            cached = cache.get();
+            if (cached == null || cached.isExpired()) {
+                cached = new CachedUpgrades(new UpgradeMatrix(selectAllFromDatabase()));
+                cache.set(cached);
+            }
+            return cached.matrix;
+        }
+    }
+    
+    /**
+     * Reloads the upgrades in memory from the database.
+     */
+    private void refresh() {
+        synchronized (cache) {
+            cache.set(new CachedUpgrades(new UpgradeMatrix(selectAllFromDatabase())));
+        }
     }
     
     /**
      * Selects all the upgrades available in the database.
      * @return List of all the upgrades in the database.
      */
-    public Map<String, Upgrade> selectAll() {
-        return new HashMap<>();
+    private List<Upgrade> selectAllFromDatabase() {
+        return new ArrayList<>();
         /*Connection connection = null;
         PreparedStatement statement = null;
         ResultSet result = null;
-        HashMap<String, Upgrade> upgrades = new HashMap<>();
+        ArrayList<Upgrade> upgrades = new ArrayList<>();
         try {
             //Get connection
             connection = getConnection();
@@ -72,8 +109,7 @@ public class UpgradeDAO {
                 upgrade.setCategory(result.getString(2));
                 upgrade.setVersionFrom(result.getString(3));
                 upgrade.setVersionTo(result.getString(4));
-                String key = upgrade.getDbType() + "$" + upgrade.getCategory() + "$" + upgrade.getVersionFrom();
-                upgrades.put(key, upgrade);
+                upgrades.add(upgrade);
             }
         } catch (NamingException | SQLException ex) {
             Logger.getLogger(UpgradeDAO.class.getName()).log(Level.SEVERE, "ERROR SELECTING INSTANCES FOR ADMIN",ex);
@@ -160,8 +196,10 @@ public class UpgradeDAO {
             } catch (Exception e) {
             }
         }
-        if (result > 0)
+        if (result > 0) {
+            refresh();
             return true;
+        }
         else
             return false;
     }
@@ -203,9 +241,36 @@ public class UpgradeDAO {
             } catch (Exception e) {
             }
         }
-        if (result > 0)
+        if (result > 0) {
+            refresh();
             return true;
+        }
         else
             return false;
-    } 
+    }
+    
+    /**
+     * Upgrade matrix together with the time it was loaded.
+     */
+    private static class CachedUpgrades {
+        
+        /**
+         * Upgrades loaded.
+         */
+        private final UpgradeMatrix matrix;
+        
+        /**
+         * Time (in ms) when the upgrades expire.
+         */
+        private final long expiresAt;
+        
+        CachedUpgrades(UpgradeMatrix matrix) {
+            this.matrix = matrix;
+            this.expiresAt = System.currentTimeMillis() + ConfigLoader.getIntProperty(CommonConstants.UPGRADES_CACHE_TTL, DEFAULT_CACHE_TTL) * 1000L;
+        }
+        
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
 }
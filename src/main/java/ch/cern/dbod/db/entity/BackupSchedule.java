@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.db.entity;
+
+import java.util.Date;
+
+/**
+ * Represents the scheduled backups of an instance: the automatic backups and
+ * the backups to tape.
+ */
+public class BackupSchedule {
+
+    /**
+     * DB name of the instance.
+     */
+    private String dbName;
+
+    /**
+     * Interval, in hours, for the scheduled backups. 0 if they are not enabled.
+     */
+    private int interval;
+
+    /**
+     * Start date of the scheduled backups. Null if they are not enabled.
+     */
+    private Date startDate;
+
+    /**
+     * Start date of the backups to tape. Null if they are not enabled.
+     */
+    private Date toTapeStartDate;
+
+    public BackupSchedule(String dbName) {
+        this.dbName = dbName;
+    }
+
+    public String getDbName() {
+        return dbName;
+    }
+
+    public void setDbName(String dbName) {
+        this.dbName = dbName;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(Date startDate) {
+        this.startDate = startDate;
+    }
+
+    public Date getToTapeStartDate() {
+        return toTapeStartDate;
+    }
+
+    public void setToTapeStartDate(Date toTapeStartDate) {
+        this.toTapeStartDate = toTapeStartDate;
+    }
+
+    /**
+     * Checks if scheduled backups are enabled.
+     * @return true if scheduled backups are enabled.
+     */
+    public boolean isEnabled() {
+        return interval > 0;
+    }
+
+    /**
+     * Checks if backups to tape are enabled.
+     * @return true if backups to tape are enabled.
+     */
+    public boolean isToTapeEnabled() {
+        return toTapeStartDate != null;
+    }
+}
@@ -344,7 +344,8 @@ public class Instance implements Comparable, Cloneable{
         Instance clone = new Instance();
         clone.setId(id);
         clone.setCategory(category);
-        clone.setCreationDate((Date) creationDate.clone());
+        if (creationDate != null)
+            clone.setCreationDate((Date) creationDate.clone());
         clone.setDbName(dbName);
         clone.setDbSize(dbSize);
         clone.setDbType(dbType);
@@ -370,7 +371,8 @@ public class Instance implements Comparable, Cloneable{
         if (host != null)
             clone.setHost(host);
         clone.setUser(user);
-        clone.setAttributes((HashMap)attributes.clone());
+        if (attributes != null)
+            clone.setAttributes((HashMap)attributes.clone());
         return clone;
     }
     
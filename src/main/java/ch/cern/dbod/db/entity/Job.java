@@ -73,6 +73,12 @@ public class Job {
      */
     private String state;
 
+    /**
+     * Log of the job, when it is selected together with the job (it is not
+     * part of the job in the API lists).
+     */
+    private transient String log;
+
     public int getId() {
         return id;
     }
@@ -137,6 +143,14 @@ public class Job {
         this.state = state;
     }
 
+    public String getLog() {
+        return log;
+    }
+
+    public void setLog(String log) {
+        this.log = log;
+    }
+
     public String getInstance_name()
     {
         return instance_name;
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.db.entity;
+
+import ch.cern.dbod.util.CommonConstants;
+import org.zkoss.util.resource.Labels;
+
+/**
+ * Represents the criteria to select jobs in the admin monitoring. Empty or
+ * null criteria select every job.
+ */
+public class JobFilter {
+
+    /**
+     * State of the jobs.
+     */
+    private String state;
+
+    /**
+     * Text contained in the command of the jobs, as displayed to the user.
+     */
+    private String command;
+
+    /**
+     * User who requested the jobs.
+     */
+    private String requester;
+
+    /**
+     * Type of the instances of the jobs.
+     */
+    private String instanceType;
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public String getRequester() {
+        return requester;
+    }
+
+    public void setRequester(String requester) {
+        this.requester = requester;
+    }
+
+    public String getInstanceType() {
+        return instanceType;
+    }
+
+    public void setInstanceType(String instanceType) {
+        this.instanceType = instanceType;
+    }
+
+    /**
+     * Checks if a job meets the criteria.
+     * @param job job to check.
+     * @return true if the job meets all the criteria.
+     */
+    public boolean accepts(Job job) {
+        return matches(state, job.getState())
+                && contains(command, getCommandLabel(job))
+                && matches(requester, job.getRequester())
+                && matches(instanceType, job.getInstance_type());
+    }
+
+    private static boolean matches(String criterion, String value) {
+        return criterion == null || criterion.isEmpty() || criterion.equalsIgnoreCase(value);
+    }
+
+    private static boolean contains(String criterion, String value) {
+        return criterion == null || criterion.isEmpty()
+                || (value != null && value.toLowerCase().contains(criterion.toLowerCase()));
+    }
+
+    /**
+     * Gets the command of a job as displayed in the job tables.
+     * @param job job to get the command of.
+     * @return label of the command, or its name if it has no label.
+     */
+    private static String getCommandLabel(Job job) {
+        String label = Labels.getLabel(CommonConstants.LABEL_JOB + job.getCommandName());
+        return label != null ? label : job.getCommandName();
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.db.entity;
+
+import java.util.List;
+
+/**
+ * Represents a job to be inserted together with its parameters, used to
+ * insert several jobs at once.
+ */
+public class JobRequest {
+
+    /**
+     * Job to insert.
+     */
+    private Job job;
+
+    /**
+     * Parameters of the job.
+     */
+    private List<CommandParam> params;
+
+    public JobRequest(Job job, List<CommandParam> params) {
+        this.job = job;
+        this.params = params;
+    }
+
+    public Job getJob() {
+        return job;
+    }
+
+    public void setJob(Job job) {
+        this.job = job;
+    }
+
+    public List<CommandParam> getParams() {
+        return params;
+    }
+
+    public void setParams(List<CommandParam> params) {
+        this.params = params;
+    }
+}
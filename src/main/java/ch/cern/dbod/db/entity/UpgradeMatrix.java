@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.db.entity;
+
+import java.util.*;
+
+/**
+ * Immutable set of available upgrades. It can be used as a map keyed by
+ * dbType$category$versionFrom, and it also keeps the upgrades indexed by
+ * type, category and version so they can be looked up without building keys.
+ */
+public final class UpgradeMatrix extends AbstractMap<String, Upgrade> {
+
+    /**
+     * Empty matrix.
+     */
+    public static final UpgradeMatrix EMPTY = new UpgradeMatrix(Collections.<Upgrade>emptyList());
+
+    /**
+     * Upgrades by dbType$category$versionFrom.
+     */
+    private final Map<String, Upgrade> upgrades;
+
+    /**
+     * Upgrades by type, category and version from.
+     */
+    private final Map<String, Map<String, Map<String, Upgrade>>> index;
+
+    /**
+     * Builds the matrix from a list of upgrades.
+     * @param list upgrades available.
+     */
+    public UpgradeMatrix(Collection<Upgrade> list) {
+        Map<String, Upgrade> flat = new HashMap<>();
+        Map<String, Map<String, Map<String, Upgrade>>> byType = new HashMap<>();
+        for (Upgrade upgrade : list) {
+            flat.put(upgrade.getDbType() + "$" + upgrade.getCategory() + "$" + upgrade.getVersionFrom(), upgrade);
+
+            Map<String, Map<String, Upgrade>> byCategory = byType.get(upgrade.getDbType());
+            if (byCategory == null) {
+                byCategory = new HashMap<>();
+                byType.put(upgrade.getDbType(), byCategory);
+            }
+            Map<String, Upgrade> byVersion = byCategory.get(upgrade.getCategory());
+            if (byVersion == null) {
+                byVersion = new HashMap<>();
+                byCategory.put(upgrade.getCategory(), byVersion);
+            }
+            byVersion.put(upgrade.getVersionFrom(), upgrade);
+        }
+        this.upgrades = Collections.unmodifiableMap(flat);
+        this.index = byType;
+    }
+
+    /**
+     * Gets the upgrade available for a given type, category and version.
+     * @param dbType type of the instance.
+     * @param category category of the instance.
+     * @param version current version of the instance.
+     * @return the upgrade, or null if there is none.
+     */
+    public Upgrade get(String dbType, String category, String version) {
+        Map<String, Map<String, Upgrade>> byCategory = index.get(dbType);
+        if (byCategory == null)
+            return null;
+        Map<String, Upgrade> byVersion = byCategory.get(category);
+        if (byVersion == null)
+            return null;
+        return byVersion.get(version);
+    }
+
+    /**
+     * Gets the upgrade available for an instance from a map of upgrades,
+     * avoiding building the key when the map is an upgrade matrix.
+     * @param upgrades available upgrades.
+     * @param instance instance to check.
+     * @return the upgrade, or null if there is none.
+     */
+    public static Upgrade find(Map<String, Upgrade> upgrades, Instance instance) {
+        if (upgrades == null)
+            return null;
+        if (upgrades instanceof UpgradeMatrix)
+            return ((UpgradeMatrix) upgrades).get(instance.getDbType(), instance.getCategory(), instance.getVersion());
+        return upgrades.get(instance.getDbType() + "$" + instance.getCategory() + "$" + instance.getVersion());
+    }
+
+    @Override
+    public Upgrade get(Object key) {
+        return upgrades.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return upgrades.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return upgrades.size();
+    }
+
+    @Override
+    public Set<Entry<String, Upgrade>> entrySet() {
+        return upgrades.entrySet();
+    }
+}
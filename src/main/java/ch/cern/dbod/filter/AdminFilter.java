@@ -9,9 +9,8 @@
 
 package ch.cern.dbod.filter;
 
-import ch.cern.dbod.util.ConfigLoader;
 import ch.cern.dbod.util.CommonConstants;
-import ch.cern.dbod.util.EGroupHelper;
+import ch.cern.dbod.util.GroupMembership;
 import ch.cern.dbod.util.HTTPHelper;
 import java.io.IOException;
 import java.util.logging.Level;
@@ -54,10 +53,10 @@ public class AdminFilter implements Filter{
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) {
         try {
             //Get groups
-            String eGroups = ((HttpServletRequest) request).getHeader(CommonConstants.ADFS_GROUP);
+            GroupMembership groups = GroupMembership.get((HttpServletRequest) request);
 
             //If user is not admin redirect to unauthorized
-            if (EGroupHelper.groupInList(ConfigLoader.getProperty(CommonConstants.ADMIN_E_GROUP), eGroups))
+            if (groups.isAdmin())
                 filterChain.doFilter(request, response);
             else
                 HTTPHelper.redirect((HttpServletRequest) request, (HttpServletResponse) response, CommonConstants.PAGE_NOT_AUTHORIZED);
@@ -9,16 +9,15 @@
 
 package ch.cern.dbod.filter;
 
-import ch.cern.dbod.util.ConfigLoader;
 import ch.cern.dbod.db.dao.InstanceDAO;
 import ch.cern.dbod.db.dao.UpgradeDAO;
 import ch.cern.dbod.db.entity.Instance;
 import ch.cern.dbod.db.entity.Upgrade;
+import ch.cern.dbod.util.AuthorizationCache;
 import ch.cern.dbod.util.CommonConstants;
-import ch.cern.dbod.util.EGroupHelper;
+import ch.cern.dbod.util.GroupMembership;
 import ch.cern.dbod.util.HTTPHelper;
 import java.io.IOException;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,6 +51,19 @@ public class InstanceFilter implements Filter {
     public void destroy() {
     }
 
+    /**
+     * Checks if a user can manage an instance. Admins are allowed to manage
+     * every instance, users their own instances and the ones of their e-groups.
+     * @param username login of the user.
+     * @param groups groups of the user.
+     * @param instance instance to check.
+     * @return true if the user can manage the instance.
+     */
+    public static boolean isAllowed(String username, GroupMembership groups, Instance instance) {
+        return groups.isAdmin() || (username != null && username.equals(instance.getOwner()))
+                || groups.isMember(instance.getEGroup());
+    }
+
     /**
      * Filters the request.
      * @param request servlet request.
@@ -64,33 +76,37 @@ public class InstanceFilter implements Filter {
             //Get instance from request
             String dbName = (String) request.getParameter(CommonConstants.INSTANCE);
             if (dbName != null && !dbName.isEmpty()) {
+                //Get username, groups and admin mode from headers (groups are parsed once for all the checks)
+                String username = ((HttpServletRequest) request).getHeader(CommonConstants.ADFS_LOGIN);
+                GroupMembership groups = GroupMembership.get((HttpServletRequest) request);
+                Boolean adminMode = groups.isAdmin();
+
+                //If access to this instance was granted recently, let the page load the instance
+                //(in parallel with its jobs) and check the access again
+                if (AuthorizationCache.isAllowed(username, groups.getHeader(), dbName)) {
+                    filterChain.doFilter(request, response);
+                    return;
+                }
+
                 UpgradeDAO upgradeDAO = new UpgradeDAO();
                 Map<String, Upgrade> upgrades = upgradeDAO.selectAll();
                 InstanceDAO instanceDAO = new InstanceDAO();
                 Instance instance = instanceDAO.selectByDbName(dbName, upgrades);
 
-                //Get admin mode from headers
-                String eGroups = ((HttpServletRequest) request).getHeader(CommonConstants.ADFS_GROUP);
-                Boolean adminMode = (Boolean) EGroupHelper.groupInList(ConfigLoader.getProperty(CommonConstants.ADMIN_E_GROUP), eGroups);
-
                 //If any of these is null redirect to instance not found
                 if (instance != null) {
-                    //Admins are allowed to manage every instance
-                    if (adminMode) {
+                    //Keep what has been resolved so the page does not need to load it again
+                    request.setAttribute(CommonConstants.ATTRIBUTE_REQUEST_INSTANCE, instance);
+                    request.setAttribute(CommonConstants.ATTRIBUTE_REQUEST_UPGRADES, upgrades);
+                    request.setAttribute(CommonConstants.ATTRIBUTE_REQUEST_ADMIN, adminMode);
+                    
+                    if (isAllowed(username, groups, instance)) {
+                        AuthorizationCache.put(username, groups.getHeader(), dbName);
                         filterChain.doFilter(request, response);
                     }
                     else {
-                        //Obtain username and egroups
-                        String username = ((HttpServletRequest) request).getHeader(CommonConstants.ADFS_LOGIN);
-                        //Check if user is authorized to see instance
-                        if (username.equals(instance.getOwner()) || EGroupHelper.groupInList(instance.getEGroup(), eGroups)) {
-                            filterChain.doFilter(request, response);
-                        }
-                        else {
-                            HTTPHelper.redirect((HttpServletRequest) request, (HttpServletResponse) response, CommonConstants.PAGE_NOT_AUTHORIZED);
-                        }
+                        HTTPHelper.redirect((HttpServletRequest) request, (HttpServletResponse) response, CommonConstants.PAGE_NOT_AUTHORIZED);
                     }
-
                 }
                 else {
                     HTTPHelper.redirect((HttpServletRequest) request, (HttpServletResponse) response, CommonConstants.PAGE_INSTANCE_NOT_FOUND);
@@ -16,10 +16,15 @@ import ch.cern.dbod.db.entity.Upgrade;
 import ch.cern.dbod.ui.model.OverviewTreeModel;
 import ch.cern.dbod.ui.model.OverviewTreeNode;
 import ch.cern.dbod.ui.renderer.OverviewTreeRenderer;
+import ch.cern.dbod.util.CollectiveActionHelper;
 import ch.cern.dbod.util.CommonConstants;
+import ch.cern.dbod.util.StateMonitor;
 import ch.cern.dbod.util.JobHelper;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.zkoss.util.resource.Labels;
@@ -28,6 +33,8 @@ import org.zkoss.zk.ui.Executions;
 import org.zkoss.zk.ui.Sessions;
 import org.zkoss.zk.ui.SuspendNotAllowedException;
 import org.zkoss.zk.ui.WrongValueException;
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
 import org.zkoss.zk.ui.ext.AfterCompose;
 import org.zkoss.zk.ui.ext.BeforeCompose;
 import org.zkoss.zul.*;
@@ -61,6 +68,10 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
      * User authenticated in the system.
      */
     private String username;
+    /**
+     * True while a collective action is being executed.
+     */
+    private boolean collectiveRunning;
 
     /**
      * Method executed before the page is composed. Obtains instances from DB.
@@ -136,6 +147,9 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
 
         displayOrHideAreas();
         
+        //Update states when they change
+        subscribeToStateChanges();
+        
         //Get show all from session
         Boolean showAll = (Boolean) Sessions.getCurrent().getAttribute(CommonConstants.ATTRIBUTE_ADMIN_SHOW_ALL);
         if (showAll != null){
@@ -169,6 +183,36 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
         }
     }
 
+    /**
+     * Subscribes this page to the changes of state of its instances.
+     */
+    private void subscribeToStateChanges() {
+        StateMonitor.subscribe(getDesktop(), null, false, new EventListener<Event>() {
+            @Override
+            public void onEvent(Event event) {
+                updateStates((StateMonitor.StateChange) event.getData());
+            }
+        });
+    }
+
+    /**
+     * Updates the state of the instances whose state changed, re-rendering
+     * only their nodes.
+     * @param change changes pushed by the state monitor.
+     */
+    private void updateStates(StateMonitor.StateChange change) {
+        Tree tree = (Tree) getFellow("overviewTree");
+        if (instances == null || tree.getModel() == null)
+            return;
+        for (Instance instance : instances) {
+            Instance updated = change.getInstances().get(instance.getDbName());
+            if (updated != null) {
+                instance.setState(updated.getState());
+                ((OverviewTreeModel) tree.getModel()).updateInstance(instance);
+            }
+        }
+    }
+
     /**
      * Refreshes the list of instances.
      */
@@ -180,12 +224,15 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
         List<Instance> newInstances = instanceDAO.selectAll(username, upgrades);
         
         //Update checked instances
-        for (int i=0; i < newInstances.size(); i++) {
-            for (int j=0; j < instances.size(); j++) {
-                if (newInstances.get(i).equals(instances.get(j)) && instances.get(j).isChecked()) {
-                    newInstances.get(i).setChecked(true);
-                    break;
-                }
+        if (newInstances != null && instances != null) {
+            Set<String> checked = new HashSet<>();
+            for (Instance instance : instances) {
+                if (instance.isChecked())
+                    checked.add(instance.getDbName());
+            }
+            for (Instance instance : newInstances) {
+                if (checked.contains(instance.getDbName()))
+                    instance.setChecked(true);
             }
         }
         instances = newInstances;
@@ -199,7 +246,7 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
         //Set the new instances
         if (instances != null && instances.size() > 0) {
             if (tree.getModel() != null) {
-                ((OverviewTreeModel) tree.getModel()).setInstances(instances);
+                ((OverviewTreeModel) tree.getModel()).refreshInstances(instances);
             }
             else {
                 tree.setModel(new OverviewTreeModel(instances, tree));
@@ -256,29 +303,22 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
      * It does not matter if the instance is pending a job, it will be executed after it.
      */
     public void startupAll() {
-        boolean error = false;
-        Tree tree = (Tree) getFellow("overviewTree");
-        OverviewTreeModel model = (OverviewTreeModel)tree.getModel();
-        List<OverviewTreeNode> checked = model.getChecked((OverviewTreeNode)model.getRoot());
-        for (int i=0; i<checked.size(); i++) {
-            OverviewTreeNode node = checked.get(i);
-            Instance instance = (Instance) node.getData();
+        List<Instance> selected = new ArrayList<>();
+        for (Instance instance : getCheckedInstances()) {
             if (!instance.getState().equals(CommonConstants.INSTANCE_STATE_AWAITING_APPROVAL)
                     && !instance.getState().equals(CommonConstants.INSTANCE_STATE_RUNNING)
                     && !instance.getState().equals(CommonConstants.INSTANCE_STATE_BUSY)
                     && !instance.getState().equals(CommonConstants.INSTANCE_STATE_UNKNOWN)) {
-                if (!jobHelper.doStartup(instance, username)){
-                    error = true;
-                }
-                else {
-                    //Reload node
-                    model.updateNode(node);
-                }
+                selected.add(instance);
             }
         }
-        //Show error if any
-        if (error)
-            showError(CommonConstants.ERROR_COLLECTIVE_ACTION);
+        //All the jobs are created in one transaction
+        runCollectiveBatch(selected, new CollectiveActionHelper.BatchAction() {
+            @Override
+            public List<Instance> execute(List<Instance> instances) {
+                return jobHelper.doStartupAll(instances, username);
+            }
+        });
     }
     
     /**
@@ -286,26 +326,19 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
      * It does not matter if the instance is pending a job, it will be executed after it.
      */
     public void shutdownAll() {
-        boolean error = false;
-        Tree tree = (Tree) getFellow("overviewTree");
-        OverviewTreeModel model = (OverviewTreeModel)tree.getModel();
-        List<OverviewTreeNode> checked = model.getChecked((OverviewTreeNode)model.getRoot());
-        for (int i=0; i<checked.size(); i++) {
-            OverviewTreeNode node = checked.get(i);
-            Instance instance = (Instance) node.getData();
+        List<Instance> selected = new ArrayList<>();
+        for (Instance instance : getCheckedInstances()) {
             if (!instance.getState().equals(CommonConstants.INSTANCE_STATE_AWAITING_APPROVAL) && !instance.getState().equals(CommonConstants.INSTANCE_STATE_STOPPED)) {
-                if (!jobHelper.doShutdown(instance, username)){
-                    error = true;
-                }
-                else {
-                    //Reload node
-                    model.updateNode(node);
-                }
+                selected.add(instance);
             }
         }
-        //Show error if any
-        if (error)
-            showError(CommonConstants.ERROR_COLLECTIVE_ACTION);
+        //All the jobs are created in one transaction
+        runCollectiveBatch(selected, new CollectiveActionHelper.BatchAction() {
+            @Override
+            public List<Instance> execute(List<Instance> instances) {
+                return jobHelper.doShutdownAll(instances, username);
+            }
+        });
     }
     
     /**
@@ -313,53 +346,35 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
      * It does not matter if the instance is pending a job, it will be executed after it.
      */
     public void backupAll(){
-        boolean error = false;
-        Tree tree = (Tree) getFellow("overviewTree");
-        OverviewTreeModel model = (OverviewTreeModel)tree.getModel();
-        List<OverviewTreeNode> checked = model.getChecked((OverviewTreeNode)model.getRoot());
-        for (int i=0; i<checked.size(); i++) {
-            OverviewTreeNode node = checked.get(i);
-            Instance instance = (Instance) node.getData();
+        List<Instance> selected = new ArrayList<>();
+        for (Instance instance : getCheckedInstances()) {
             if (!instance.getState().equals(CommonConstants.INSTANCE_STATE_AWAITING_APPROVAL)) {
-                if (!jobHelper.doBackup(instance, username)){
-                    error = true;
-                }
-                else {
-                    //Reload node
-                    model.updateNode(node);
-                }
+                selected.add(instance);
             }
         }
-        //Show error if any
-        if (error)
-            showError(CommonConstants.ERROR_COLLECTIVE_ACTION);
+        runCollectiveAction(selected, new CollectiveActionHelper.Action() {
+            @Override
+            public boolean execute(Instance instance) {
+                return jobHelper.doBackup(instance, username);
+            }
+        });
     }
     
     /**
      * Set all selected instances in maintenance state.
      */
     public void maintainAll() {
-        boolean error = false;
-        Tree tree = (Tree) getFellow("overviewTree");
-        OverviewTreeModel model = (OverviewTreeModel)tree.getModel();
-        List<OverviewTreeNode> checked = model.getChecked((OverviewTreeNode)model.getRoot());
-        for (int i=0; i<checked.size(); i++) {
-            OverviewTreeNode node = checked.get(i);
-            Instance instance = (Instance) node.getData();
-            Instance clone = instance.clone();
-            clone.setState(CommonConstants.INSTANCE_STATE_MAINTENANCE);
-            if (instanceDAO.update(instance, clone, username) <= 0) {
-                error = true;
-            }
-            else {
+        runCollectiveAction(getCheckedInstances(), new CollectiveActionHelper.Action() {
+            @Override
+            public boolean execute(Instance instance) {
+                Instance clone = instance.clone();
+                clone.setState(CommonConstants.INSTANCE_STATE_MAINTENANCE);
+                if (instanceDAO.update(instance, clone, username) <= 0)
+                    return false;
                 instance.setState(CommonConstants.INSTANCE_STATE_MAINTENANCE);
-                //Reload node
-                model.updateNode(node);
+                return true;
             }
-        }
-        //Show error if any
-        if (error)
-            showError(CommonConstants.ERROR_COLLECTIVE_ACTION);
+        });
     }
     
     /**
@@ -367,26 +382,112 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
      * It does not matter if the instance is pending a job, it will be executed after it.
      */
     public void upgradeAll(){
-        boolean error = false;
+        List<Instance> selected = new ArrayList<>();
+        for (Instance instance : getCheckedInstances()) {
+            if (!instance.getState().equals(CommonConstants.INSTANCE_STATE_AWAITING_APPROVAL) && instance.getUpgradeTo() != null && !instance.getUpgradeTo().isEmpty()) {
+                selected.add(instance);
+            }
+        }
+        //All the jobs are created in one transaction
+        runCollectiveBatch(selected, new CollectiveActionHelper.BatchAction() {
+            @Override
+            public List<Instance> execute(List<Instance> instances) {
+                return jobHelper.doUpgradeAll(instances, username);
+            }
+        });
+    }
+    
+    /**
+     * Gets the instances checked in the tree.
+     * @return list of checked instances.
+     */
+    private List<Instance> getCheckedInstances() {
         Tree tree = (Tree) getFellow("overviewTree");
         OverviewTreeModel model = (OverviewTreeModel)tree.getModel();
-        List<OverviewTreeNode> checked = model.getChecked((OverviewTreeNode)model.getRoot());
-        for (int i=0; i<checked.size(); i++) {
-            OverviewTreeNode node = checked.get(i);
-            Instance instance = (Instance) node.getData();
-            if (!instance.getState().equals(CommonConstants.INSTANCE_STATE_AWAITING_APPROVAL) && instance.getUpgradeTo() != null && !instance.getUpgradeTo().isEmpty()) {
-                if (!jobHelper.doUpgrade(instance, username)){
-                    error = true;
+        List<Instance> checked = new ArrayList<>();
+        for (OverviewTreeNode node : model.getChecked((OverviewTreeNode)model.getRoot()))
+            checked.add((Instance) node.getData());
+        return checked;
+    }
+    
+    /**
+     * Executes a collective action on the given instances in parallel. Nodes
+     * are re-rendered and progress is displayed as instances finish, and the
+     * instances where the action failed are displayed at the end.
+     * @param selected instances to execute the action on.
+     * @param action action to execute.
+     */
+    private void runCollectiveAction(List<Instance> selected, CollectiveActionHelper.Action action) {
+        EventListener<Event> listener = startCollective(selected);
+        if (listener != null)
+            CollectiveActionHelper.run(getDesktop(), selected, action, listener);
+    }
+    
+    /**
+     * Executes a collective action on the given instances as a single batch
+     * in the background, displaying the result as in runCollectiveAction.
+     * @param selected instances to execute the action on.
+     * @param action action to execute.
+     */
+    private void runCollectiveBatch(List<Instance> selected, CollectiveActionHelper.BatchAction action) {
+        EventListener<Event> listener = startCollective(selected);
+        if (listener != null)
+            CollectiveActionHelper.runBatch(getDesktop(), selected, action, listener);
+    }
+    
+    /**
+     * Marks a collective action as started and creates the listener that
+     * displays its progress and result.
+     * @param selected instances to execute the action on.
+     * @return listener of the action, or null if another action is running.
+     */
+    private EventListener<Event> startCollective(List<Instance> selected) {
+        //Do not start an action while another one is running
+        if (collectiveRunning)
+            return null;
+        collectiveRunning = true;
+        final Label progress = (Label) getFellow("collectiveProgress");
+        progress.setValue(Labels.getLabel(CommonConstants.LABEL_COLLECTIVE_PROGRESS, new Object[] {0, selected.size()}));
+        return new EventListener<Event>() {
+            @Override
+            public void onEvent(Event event) {
+                OverviewTreeModel model = (OverviewTreeModel) ((Tree) getFellow("overviewTree")).getModel();
+                if (event.getName().equals(CollectiveActionHelper.ON_PROGRESS)) {
+                    CollectiveActionHelper.Result result = (CollectiveActionHelper.Result) event.getData();
+                    progress.setValue(Labels.getLabel(CommonConstants.LABEL_COLLECTIVE_PROGRESS, new Object[] {result.getDone(), result.getTotal()}));
+                    //Apply the new state (in this thread, the tree renders the same instances) and reload node
+                    if (result.isSuccess()) {
+                        result.getInstance().setState(result.getState());
+                        model.updateInstance(result.getInstance());
+                    }
                 }
                 else {
-                    //Reload node
-                    model.updateNode(node);
+                    collectiveRunning = false;
+                    CollectiveActionHelper.Summary summary = (CollectiveActionHelper.Summary) event.getData();
+                    showCollectiveSummary(summary.getSucceeded().size() + summary.getFailed().size(), summary.getFailed());
                 }
             }
-        }
+        };
+    }
+    
+    /**
+     * Displays the summary of a collective action, and an error with the
+     * instances where it failed, if any.
+     * @param total number of instances the action was executed on.
+     * @param failed instances where the action failed.
+     */
+    private void showCollectiveSummary(int total, List<Instance> failed) {
+        ((Label) getFellow("collectiveProgress")).setValue(Labels.getLabel(CommonConstants.LABEL_COLLECTIVE_SUMMARY, new Object[] {total, failed.size()}));
         //Show error if any
-        if (error)
-            showError(CommonConstants.ERROR_COLLECTIVE_ACTION);
+        if (!failed.isEmpty()) {
+            StringBuilder dbNames = new StringBuilder();
+            for (Instance instance : failed) {
+                if (dbNames.length() > 0)
+                    dbNames.append(", ");
+                dbNames.append(instance.getDbName());
+            }
+            showError(CommonConstants.ERROR_COLLECTIVE_ACTION_INSTANCES, dbNames.toString());
+        }
     }
     
     /**
@@ -464,11 +565,12 @@ public class AdminController extends Vbox implements BeforeCompose, AfterCompose
     /**
      * Displays an error window for the error code provided.
      * @param errorCode error code for the message to be displayed.
+     * @param args arguments of the message, if any.
      */
-    private void showError(String errorCode) {
+    private void showError(String errorCode, Object... args) {
         Window errorWindow = (Window) getFellow("errorWindow");
         Label errorMessage = (Label) errorWindow.getFellow("errorMessage");
-        errorMessage.setValue(Labels.getLabel(errorCode));
+        errorMessage.setValue(Labels.getLabel(errorCode, args));
         try {
             errorWindow.doModal();
         }
@@ -11,9 +11,13 @@ package ch.cern.dbod.ui.controller;
 
 import ch.cern.dbod.db.dao.JobDAO;
 import ch.cern.dbod.db.entity.Job;
+import ch.cern.dbod.db.entity.JobFilter;
 import ch.cern.dbod.ui.model.LastJobsModel;
 import ch.cern.dbod.ui.renderer.LastJobsRenderer;
 import ch.cern.dbod.util.CommonConstants;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import org.zkoss.zk.ui.Execution;
 import org.zkoss.zk.ui.Executions;
@@ -28,6 +32,11 @@ import org.zkoss.zul.*;
  */
 public class AdminMonitoringController extends Vbox implements BeforeCompose, AfterCompose{
 
+    /**
+     * Number of jobs shown in each page.
+     */
+    private static final int PAGE_SIZE = 20;
+
     /**
      * Job DAO
      */
@@ -36,10 +45,30 @@ public class AdminMonitoringController extends Vbox implements BeforeCompose, Af
      * List of jobs.
      */
     private List<Job> jobs;
+    /**
+     * Model of the grid of jobs.
+     */
+    private LastJobsModel jobsModel;
     /**
      * User authenticated in the system.
      */
     private String username;
+    /**
+     * Criteria to select the jobs.
+     */
+    private JobFilter filter = new JobFilter();
+    /**
+     * Last job of the page before the current one (null for the first page).
+     */
+    private Job after;
+    /**
+     * Last jobs of the pages before each of the newer pages, to go back.
+     */
+    private Deque<Job> newerPages = new ArrayDeque<>();
+    /**
+     * Indicates if there are jobs older than the ones in the current page.
+     */
+    private boolean hasOlder;
 
     /**
      * Method executed before the page is composed. Obtains stats from DB.
@@ -49,7 +78,7 @@ public class AdminMonitoringController extends Vbox implements BeforeCompose, Af
         Execution execution = Executions.getCurrent();
         username = execution.getHeader(CommonConstants.ADFS_LOGIN);
         jobDAO = new JobDAO();
-        jobs = jobDAO.selectLastJobs(username);
+        jobs = selectPage();
     }
 
     /**
@@ -60,7 +89,85 @@ public class AdminMonitoringController extends Vbox implements BeforeCompose, Af
     public void afterCompose() {
         //Last jobs information grid
         Grid lastJobsGrid = (Grid) getFellow("lastJobsInformation");
-        lastJobsGrid.setModel(new LastJobsModel(jobs));
+        jobsModel = new LastJobsModel(jobs);
+        lastJobsGrid.setModel(jobsModel);
         lastJobsGrid.setRowRenderer(new LastJobsRenderer());
+        updateButtons();
+    }
+
+    /**
+     * Selects the jobs of the current page.
+     * @return jobs in the page.
+     */
+    private List<Job> selectPage() {
+        //Select one more job to know if there are older ones
+        List<Job> page = jobDAO.selectLastJobs(username, filter, after, PAGE_SIZE + 1);
+        hasOlder = page.size() > PAGE_SIZE;
+        if (hasOlder)
+            page = new ArrayList<>(page.subList(0, PAGE_SIZE));
+        return page;
+    }
+
+    /**
+     * Loads the current page in the grid.
+     */
+    private void loadPage() {
+        jobs = selectPage();
+        jobsModel.setJobs(jobs);
+        updateButtons();
+    }
+
+    private void updateButtons() {
+        ((Toolbarbutton) getFellow("newerJobsBtn")).setDisabled(newerPages.isEmpty() && after == null);
+        ((Toolbarbutton) getFellow("olderJobsBtn")).setDisabled(!hasOlder);
+    }
+
+    /**
+     * Shows the next page of older jobs.
+     */
+    public void olderJobs() {
+        if (!hasOlder || jobs.isEmpty())
+            return;
+        //The page may be sorted by another column, the cursor is the oldest job
+        Job oldest = jobs.get(0);
+        for (Job job : jobs) {
+            if (JobDAO.compareKeys(job, oldest) < 0)
+                oldest = job;
+        }
+        if (after != null)
+            newerPages.push(after);
+        else
+            newerPages.clear();
+        after = oldest;
+        loadPage();
+    }
+
+    /**
+     * Shows the previous page of newer jobs.
+     */
+    public void newerJobs() {
+        if (after == null)
+            return;
+        after = newerPages.isEmpty() ? null : newerPages.pop();
+        loadPage();
+    }
+
+    /**
+     * Applies the filters and shows the first page of jobs.
+     */
+    public void filterJobs() {
+        filter = new JobFilter();
+        filter.setState(getFilterValue("jobStateFilter"));
+        filter.setInstanceType(getFilterValue("jobTypeFilter"));
+        filter.setCommand(((Textbox) getFellow("jobCommandFilter")).getValue().trim());
+        filter.setRequester(((Textbox) getFellow("jobRequesterFilter")).getValue().trim());
+        after = null;
+        newerPages.clear();
+        loadPage();
+    }
+
+    private String getFilterValue(String id) {
+        Comboitem item = ((Combobox) getFellow(id)).getSelectedItem();
+        return item != null ? (String) item.getValue() : null;
     }
-}
\ No newline at end of file
+}
@@ -10,6 +10,7 @@
 package ch.cern.dbod.ui.controller;
 
 import ch.cern.dbod.db.dao.JobDAO;
+import ch.cern.dbod.db.entity.BackupSchedule;
 import ch.cern.dbod.db.entity.Instance;
 import ch.cern.dbod.ui.model.OverviewTreeModel;
 import ch.cern.dbod.util.CommonConstants;
@@ -204,7 +205,8 @@ public class BackupController extends Window {
         Vbox configContent = new Vbox();
 
         //Initialise scheduled backup configuration
-        initScheduledBackup();
+        BackupSchedule schedule = jobDAO.getBackupSchedule(instance);
+        initScheduledBackup(schedule);
         //Box containing the checkbox for automatic backups and the interval
         Hbox autoBox =  new Hbox();
         autoBox.setAlign("bottom");
@@ -248,7 +250,7 @@ public class BackupController extends Window {
         Hbox tapeBox =  new Hbox();
         tapeBox.setAlign("bottom");
         //Create checkbox for backups to tape
-        initBackupToTape();
+        initBackupToTape(schedule);
         backupToTape = new Checkbox();
         backupToTape.setLabel(Labels.getLabel(CommonConstants.LABEL_BACKUP_TO_TAPE));
         backupToTape.setChecked(prevBackupToTapeEnabled);
@@ -367,25 +369,21 @@ public class BackupController extends Window {
     
     /**
      * Instatiates the fields for the current scheduled backup configuration.
+     * @param schedule current backup schedule of the instance.
      */
-    private void initScheduledBackup () {
-        prevInterval = jobDAO.getBackupInterval(instance);
-        prevBackupDate = jobDAO.getBackupStartDate(instance);
-        if (prevInterval > 0)
-            prevBackupEnabled = true;
-        else
-            prevBackupEnabled = false;
+    private void initScheduledBackup (BackupSchedule schedule) {
+        prevInterval = schedule.getInterval();
+        prevBackupDate = schedule.getStartDate();
+        prevBackupEnabled = schedule.isEnabled();
     }
     
     /**
      * Instatiates the fields for the current backup to tape configuration.
+     * @param schedule current backup schedule of the instance.
      */
-    private void initBackupToTape () {
-        prevBackupToTapeDate = jobDAO.getBackupToTapeStartDate(instance);
-        if (prevBackupToTapeDate != null)
-            prevBackupToTapeEnabled = true;
-        else
-            prevBackupToTapeEnabled = false;
+    private void initBackupToTape (BackupSchedule schedule) {
+        prevBackupToTapeDate = schedule.getToTapeStartDate();
+        prevBackupToTapeEnabled = schedule.isToTapeEnabled();
     }
     
     /**
@@ -9,26 +9,36 @@
 
 package ch.cern.dbod.ui.controller;
 
+import ch.cern.dbod.util.AsyncHelper;
+import ch.cern.dbod.util.AuthorizationCache;
 import ch.cern.dbod.util.ConfigLoader;
 import ch.cern.dbod.db.dao.*;
 import ch.cern.dbod.db.entity.*;
+import ch.cern.dbod.filter.InstanceFilter;
 import ch.cern.dbod.ui.renderer.InstanceChangesRenderer;
 import ch.cern.dbod.util.CommonConstants;
 import ch.cern.dbod.util.EGroupHelper;
 import ch.cern.dbod.util.FormValidations;
+import ch.cern.dbod.util.GroupMembership;
 import ch.cern.dbod.util.JobHelper;
+import ch.cern.dbod.util.StateMonitor;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.*;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.zkoss.util.resource.Labels;
 import org.zkoss.zk.ui.*;
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
 import org.zkoss.zk.ui.ext.AfterCompose;
 import org.zkoss.zk.ui.ext.BeforeCompose;
+import org.zkoss.zk.ui.util.Clients;
 import org.zkoss.zul.*;
+import org.zkoss.zul.Timer;
 
 /**
  * Controller for the instance page.
@@ -36,6 +46,10 @@ import org.zkoss.zul.*;
  * @author Jose Andres Cordero Benitez
  */
 public class InstanceController extends Vbox implements AfterCompose, BeforeCompose {
+    /**
+     * Number of characters of a job log sent to the page at a time.
+     */
+    private static final int LOG_CHUNK_SIZE = 64 * 1024;
     /**
      * Upgrade DAO
      */
@@ -72,6 +86,10 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
      * List of jobs performed on this instance.
      */
     List<Job> jobs;
+    /**
+     * Jobs being fetched in the background while the instance is loaded.
+     */
+    private Future<List<Job>> pendingJobs;
     /**
      * List of changes.
      */
@@ -101,6 +119,24 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
      * Indicates if the user is admin
      */
     private boolean admin;
+    /**
+     * Job whose log is shown in the job window.
+     */
+    private Job logJob;
+    /**
+     * Log of the job shown in the job window.
+     */
+    private String logText;
+    /**
+     * Position in the log of the first character shown (earlier output is
+     * loaded on demand).
+     */
+    private int logStart;
+    /**
+     * Whether earlier output of the log was loaded, so new output is appended
+     * without moving the shown part of the log.
+     */
+    private boolean logEarlier;
     
     /**
      * Method executed before composing the page. It instantiates the necessary attributes.
@@ -110,16 +146,43 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
         //Get instance
         String dbName = (String) Executions.getCurrent().getParameter(CommonConstants.INSTANCE);
         if (dbName != null && !dbName.isEmpty()) {
+            Execution execution = Executions.getCurrent();
             upgradeDAO = new UpgradeDAO();
-            upgrades = upgradeDAO.selectAll();
             instanceDAO = new InstanceDAO();
-            instance = instanceDAO.selectByDbName(dbName, upgrades);
+            jobDAO = new JobDAO();
+            username = execution.getHeader(CommonConstants.ADFS_LOGIN);
+            
+            //Reuse the instance already resolved by InstanceFilter in this request, if any
+            Instance requestInstance = (Instance) execution.getAttribute(CommonConstants.ATTRIBUTE_REQUEST_INSTANCE);
+            Boolean adminMode = (Boolean) execution.getAttribute(CommonConstants.ATTRIBUTE_REQUEST_ADMIN);
+            if (requestInstance != null && dbName.equals(requestInstance.getDbName()) && adminMode != null) {
+                //Set by InstanceFilter from UpgradeDAO.selectAll()
+                @SuppressWarnings("unchecked")
+                Map<String, Upgrade> requestUpgrades = (Map<String, Upgrade>) execution.getAttribute(CommonConstants.ATTRIBUTE_REQUEST_UPGRADES);
+                upgrades = requestUpgrades;
+                instance = requestInstance;
+            }
+            //Access was granted from a previous decision: load the instance while its jobs are loaded
+            else {
+                upgrades = upgradeDAO.selectAll();
+                Instance requested = new Instance();
+                requested.setDbName(dbName);
+                pendingJobs = jobDAO.selectByInstanceAsync(requested);
+                instance = AsyncHelper.get(instanceDAO.selectByDbNameAsync(dbName, upgrades));
+                GroupMembership groups = GroupMembership.get(execution);
+                adminMode = groups.isAdmin();
+                if (instance == null) {
+                    Executions.sendRedirect(CommonConstants.PAGE_INSTANCE_NOT_FOUND);
+                }
+                //Check the access again with the instance just loaded (the owner or e-group may have changed)
+                else if (!InstanceFilter.isAllowed(username, groups, instance)) {
+                    AuthorizationCache.invalidate(dbName);
+                    instance = null;
+                    Executions.sendRedirect(CommonConstants.PAGE_NOT_AUTHORIZED);
+                }
+            }
+            
             if (instance != null) {
-                //Get username and adminMode from headers
-                Execution execution = Executions.getCurrent();
-                username = execution.getHeader(CommonConstants.ADFS_LOGIN);
-                String eGroups = execution.getHeader(CommonConstants.ADFS_GROUP);
-                Boolean adminMode = (Boolean) EGroupHelper.groupInList(ConfigLoader.getProperty(CommonConstants.ADMIN_E_GROUP), eGroups);
                 admin = adminMode.booleanValue();
                 
                 //Get user and password for the web services account
@@ -135,34 +198,40 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
                 jobHelper = new JobHelper(admin);
                 dateFormatter = new SimpleDateFormat(CommonConstants.DATE_FORMAT);
                 dateTimeFormatter = new SimpleDateFormat(CommonConstants.DATE_TIME_FORMAT);     
-                jobDAO = new JobDAO();
                 eGroupHelper = new EGroupHelper(wsUser, wsPswd);
 
-                //Load instance
-                getInstanceInfo();
+                //Load master, slave and jobs (the instance has just been loaded)
+                getInstanceInfo(false);
             }
         }
     }
     
     /**
      * Gets the information of the current instance from the DB.
+     * @param reload true to query the instance again, false if it has just been loaded.
      */
-    private void getInstanceInfo () {
-        //Select upgrades
-        upgrades = upgradeDAO.selectAll();
-        //Query the database for the most recent version of this instance
-        instance = instanceDAO.selectByDbName(instance.getDbName(), upgrades);
+    private void getInstanceInfo (boolean reload) {
+        //Start loading the jobs of this instance (unless they are already being loaded)
+        if (pendingJobs == null)
+            pendingJobs = jobDAO.selectByInstanceAsync(instance);
+        if (reload) {
+            //Select upgrades
+            upgrades = upgradeDAO.selectAll();
+            //Query the API for the most recent version of this instance while the jobs are loaded
+            Future<Instance> pendingInstance = instanceDAO.selectByDbNameAsync(instance.getDbName(), upgrades);
+            instance = AsyncHelper.get(pendingInstance);
+        }
         
-        //Load master and slave
+        //Load master and slave in parallel
         if (instance != null) {
+            Future<Instance> pendingMaster = null;
+            Future<Instance> pendingSlave = null;
             if (instance.getMaster() != null && !instance.getMaster().isEmpty())
-                master = instanceDAO.selectByDbName(instance.getMaster(), upgrades);
-            else
-                master = null;
+                pendingMaster = instanceDAO.selectByDbNameAsync(instance.getMaster(), upgrades);
             if (instance.getSlave() != null && !instance.getSlave().isEmpty())
-                slave = instanceDAO.selectByDbName(instance.getSlave(), upgrades);
-            else
-                slave = null;
+                pendingSlave = instanceDAO.selectByDbNameAsync(instance.getSlave(), upgrades);
+            master = AsyncHelper.get(pendingMaster);
+            slave = AsyncHelper.get(pendingSlave);
         }
         else {
             master = null;
@@ -209,10 +278,17 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
             loadJobs();
             //Load changes
             loadChanges();
+            //Refresh when the state of the instance or its jobs changes
+            StateMonitor.subscribe(getDesktop(), Collections.singleton(instance.getDbName()), true, new EventListener<Event>() {
+                @Override
+                public void onEvent(Event event) {
+                    refreshInfo();
+                }
+            });
         }
         
         String jobParameter = (String) Executions.getCurrent().getParameter("job");
-        if (jobParameter != null && !jobParameter.isEmpty()) {
+        if (instance != null && jobParameter != null && !jobParameter.isEmpty()) {
             Integer jobId = null;
             try {
                 jobId = Integer.parseInt(jobParameter);
@@ -261,7 +337,7 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
      */
     public void refreshInfo () {
         //Refresh instance
-        getInstanceInfo();
+        getInstanceInfo(true);
         
         //Refresh information
         if (instance != null) {
@@ -672,8 +748,14 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
       * Load the jobs carried out (or pending) for the current instance.
       */
     private void loadJobs() {
-        //Get jobs from database
-        jobs = jobDAO.selectByInstance(instance);
+        //Get jobs from the API (or the ones already being fetched with the instance)
+        if (pendingJobs != null) {
+            jobs = AsyncHelper.get(pendingJobs);
+            pendingJobs = null;
+        }
+        else {
+            jobs = jobDAO.selectByInstance(instance);
+        }
 
         //Get selected job (if any)
         Listbox jobSelector = (Listbox) getFellow("jobGridSelector");
@@ -786,13 +868,120 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
             }
 
             //Load log
-            ((Textbox) window.getFellow("log")).setRawValue(jobDAO.selectLogByJob(instance.getDbName(), job));
+            showLog(window, job, jobDAO.selectLogByJob(instance.getDbName(), job));
 
             //Show the popup with the information
             window.setVisible(true);
         }
     }
 
+    /**
+     * Shows the last part of the log of a job. If the job is running, the
+     * new output is appended periodically.
+     * @param window job window.
+     * @param job job to show the log of.
+     * @param log log of the job.
+     */
+    private void showLog(Window window, Job job, String log) {
+        logJob = job;
+        logText = log != null ? log : "";
+        logStart = getLogChunkStart(logText.length());
+        logEarlier = false;
+        displayLog(window);
+        scrollLogToEnd(window, true);
+        ((Timer) window.getFellow("logTimer")).setRunning(CommonConstants.JOB_STATE_RUNNING.equals(job.getState()));
+    }
+
+    /**
+     * Displays the log from the current start.
+     * @param window job window.
+     */
+    private void displayLog(Window window) {
+        ((Textbox) window.getFellow("log")).setRawValue(logText.substring(logStart));
+        ((Toolbarbutton) window.getFellow("earlierLogBtn")).setVisible(logStart > 0);
+    }
+
+    /**
+     * Gets the start of the chunk of the log ending at the given position,
+     * on a line boundary if possible.
+     * @param end end of the chunk.
+     * @return start of the chunk.
+     */
+    private int getLogChunkStart(int end) {
+        int start = Math.max(0, end - LOG_CHUNK_SIZE);
+        if (start > 0) {
+            int newLine = logText.indexOf('\n', start);
+            if (newLine >= 0 && newLine + 1 < end)
+                start = newLine + 1;
+        }
+        return start;
+    }
+
+    /**
+     * Scrolls the log in the page to the end. Unless forced, it is only
+     * scrolled if the user did not scroll it up from the end.
+     * @param window job window.
+     * @param force true to scroll even if the user scrolled the log up.
+     */
+    private void scrollLogToEnd(Window window, boolean force) {
+        Clients.evalJavaScript("var w = zk.Widget.$('#" + window.getFellow("log").getUuid() + "');"
+                + " if (w) { var n = w.$n(); if (n) {"
+                + " if (!n.dbodTail) { n.dbodTail = true; jq(n).on('scroll', function () {"
+                + " n.dbodAtEnd = n.scrollTop + n.clientHeight >= n.scrollHeight - 20; }); }"
+                + " if (" + force + " || n.dbodAtEnd !== false) { n.scrollTop = n.scrollHeight; n.dbodAtEnd = true; } } }");
+    }
+
+    /**
+     * Loads the previous chunk of the log of the job shown.
+     */
+    public void loadEarlierLog() {
+        if (logJob == null || logStart == 0)
+            return;
+        Window window = (Window) getFellow("jobInfoWindow");
+        logStart = getLogChunkStart(logStart);
+        logEarlier = true;
+        displayLog(window);
+    }
+
+    /**
+     * Appends the new output of the running job shown. When the job
+     * finishes, its information is reloaded. The job and its log are
+     * obtained with a single request.
+     */
+    public void tailLog() {
+        Window window = (Window) getFellow("jobInfoWindow");
+        if (logJob == null || !window.isVisible()) {
+            ((Timer) window.getFellow("logTimer")).stop();
+            return;
+        }
+        Job job = jobDAO.selectJobWithLog(instance.getDbName(), logJob.getId());
+        if (job == null)
+            return;
+        if (!CommonConstants.JOB_STATE_RUNNING.equals(job.getState())) {
+            loadJob(job);
+            return;
+        }
+        String log = job.getLog();
+        if (log.length() == logText.length())
+            return;
+        if (log.startsWith(logText)) {
+            logText = log;
+            //If the user loaded earlier output, append without moving or scrolling the log
+            if (logEarlier) {
+                displayLog(window);
+                return;
+            }
+            //Otherwise keep at most two chunks in the page, earlier output is loaded on demand
+            if (logText.length() - logStart > 2 * LOG_CHUNK_SIZE)
+                logStart = getLogChunkStart(logText.length());
+            displayLog(window);
+            scrollLogToEnd(window, false);
+        }
+        else {
+            showLog(window, job, log);
+        }
+    }
+
     /**
      * Creates job to startup the instance.
      */
@@ -980,9 +1169,18 @@ public class InstanceController extends Vbox implements AfterCompose, BeforeComp
             boolean eGroupCreated = false;
             //If the egroup does not exist create it
             if (!eGroupExists) {
+                //Check again with the service, the e-group may have been created since it was looked up
+                Boolean exists = eGroupHelper.eGroupExistsUncached(((Textbox) getFellow("eGroupEdit")).getValue());
+                if (exists == null) {
+                    ((Textbox) getFellow("eGroupEdit")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_SEARCH));
+                    return;
+                }
+                else if (exists)
+                    eGroupExists = true;
                 //If the egroup was successfully created store the instance in the DB
-                eGroupCreated = eGroupHelper.createEGroup(((Textbox) getFellow("eGroupEdit")).getValue(),
-                        instance.getDbName(), userCCID, true);
+                else
+                    eGroupCreated = eGroupHelper.createEGroup(((Textbox) getFellow("eGroupEdit")).getValue(),
+                            instance.getDbName(), userCCID, true);
             }
             //If the egroup exists or it was successfully created
             if (eGroupExists || eGroupCreated) {
@@ -12,12 +12,15 @@ package ch.cern.dbod.ui.controller;
 import ch.cern.dbod.util.ConfigLoader;
 import ch.cern.dbod.db.dao.InstanceDAO;
 import ch.cern.dbod.db.entity.Instance;
+import ch.cern.dbod.util.AsyncHelper;
 import ch.cern.dbod.util.AuthenticationHelper;
 import ch.cern.dbod.util.CommonConstants;
 import ch.cern.dbod.util.EGroupHelper;
 import ch.cern.dbod.util.FormValidations;
 import ch.cern.dbod.ws.authentication.UserInfo;
+import ch.cern.dbod.ws.egroups.EgroupType;
 import java.util.Date;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.zkoss.util.resource.Labels;
@@ -38,6 +41,11 @@ public class NewInstanceController extends Window implements AfterCompose {
      */
     private int userCCID;
     
+    /**
+     * Indicates if the e-group of the form exists, as found in the last validation.
+     */
+    private boolean eGroupFound;
+    
     /**
      * Helper to manage e-groups.
      */
@@ -98,24 +106,11 @@ public class NewInstanceController extends Window implements AfterCompose {
      */
     public void createInstanceAndCheckEGroup () {
         //Check for errors in form
-        if (isUsernameValid()
-                & FormValidations.isDbNameValid((Textbox) getFellow("dbName"))
-                & FormValidations.isEGroupValid((Textbox) getFellow("eGroup"), (String)((Combobox)getFellow("dbType")).getSelectedItem().getValue(), eGroupHelper)
-                & FormValidations.isCategoryValid((Combobox) getFellow("category"))
-                & FormValidations.isExpiryDateValid((Datebox) getFellow("expiryDate"))
-                & FormValidations.isDbTypeValid((Combobox) getFellow("dbType"))
-                & FormValidations.isVersionValid((Textbox) getFellow("version"))
-                & FormValidations.isMasterValid((Textbox) getFellow("master"), instanceDAO)
-                & FormValidations.isHostValid((Textbox) getFellow("host"))
-                & FormValidations.isDbSizeValid((Textbox) getFellow("dbSize"))
-                & FormValidations.isProjectValid((Textbox) getFellow("project"))
-                & FormValidations.isDescriptionValid((Textbox) getFellow("description"))) {
+        if (isFormValid()) {
             //If there is an egroup
             if(((Textbox) getFellow("eGroup")).getValue() != null && !((Textbox) getFellow("eGroup")).getValue().isEmpty()) {
-                //Check if e-group exists
-                boolean eGroupExists = eGroupHelper.eGroupExists(((Textbox) getFellow("eGroup")).getValue());
-                //If the egroup does not exist show confimation window and return
-                if (!eGroupExists) {
+                //If the egroup does not exist (it was looked up during the validation) show confimation window and return
+                if (!eGroupFound) {
                     try {
                         ((Window) getFellow("eGroupConfirm")).doModal();
                     } catch (SuspendNotAllowedException ex) {
@@ -124,11 +119,11 @@ public class NewInstanceController extends Window implements AfterCompose {
                 }
                 //Create instance with this values
                 else
-                    createInstance(true);
+                    insertInstance(true);
             }
             //If the egroup is not specified we create the instance as if it already existed
             else
-                createInstance(true);
+                insertInstance(true);
         }
     }
 
@@ -138,89 +133,155 @@ public class NewInstanceController extends Window implements AfterCompose {
      */
     public void createInstance(boolean eGroupExists) {
         //Check for errors in form
-        if (isUsernameValid()
-                & FormValidations.isDbNameValid((Textbox) getFellow("dbName"))
-                & FormValidations.isEGroupValid((Textbox) getFellow("eGroup"), (String)((Combobox)getFellow("dbType")).getSelectedItem().getValue(), eGroupHelper)
-                & FormValidations.isCategoryValid((Combobox) getFellow("category"))
-                & FormValidations.isExpiryDateValid((Datebox) getFellow("expiryDate"))
-                & FormValidations.isDbTypeValid((Combobox) getFellow("dbType"))
-                & FormValidations.isVersionValid((Textbox) getFellow("version"))
-                & FormValidations.isMasterValid((Textbox) getFellow("master"), instanceDAO)
-                & FormValidations.isHostValid((Textbox) getFellow("host"))
-                & FormValidations.isDbSizeValid((Textbox) getFellow("dbSize"))
-                & FormValidations.isProjectValid((Textbox) getFellow("project"))
-                & FormValidations.isDescriptionValid((Textbox) getFellow("description"))) {
-            boolean eGroupCreated = false;
-            //If the egroup does not exist create it
-            if (!eGroupExists) {
-                //If the egroup was successfully created store the instance in the DB
+        if (isFormValid())
+            insertInstance(eGroupExists);
+    }
+
+    /**
+     * Creates an instance (and an egroup if necessary) from a form already validated.
+     * @param eGroupExists If the specified egroup exists.
+     */
+    private void insertInstance(boolean eGroupExists) {
+        boolean eGroupCreated = false;
+        //If the egroup does not exist create it
+        if (!eGroupExists) {
+            //Check again with the service, the e-group may have been created since it was looked up
+            Boolean exists = eGroupHelper.eGroupExistsUncached(((Textbox) getFellow("eGroup")).getValue());
+            if (exists == null) {
+                ((Textbox) getFellow("eGroup")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_SEARCH));
+                return;
+            }
+            else if (exists)
+                eGroupExists = true;
+            //If the egroup was successfully created store the instance in the DB
+            else
                 eGroupCreated = eGroupHelper.createEGroup(((Textbox) getFellow("eGroup")).getValue(),
                         ((Textbox) getFellow("dbName")).getValue(), userCCID, true);
-            }
-            
-            //If the egroups exists or it was created adn  instance is Oracle 12c create OEM e-group
-            boolean addedToOEM = true;
-            if ((eGroupExists || eGroupCreated)
-                    && CommonConstants.DB_TYPE_ORACLE_12.equals((String)((Combobox)getFellow("dbType")).getSelectedItem().getValue())) {
-                addedToOEM = eGroupHelper.addEgroupToOEM(((Textbox) getFellow("dbName")).getValue(),
-                                            ((Textbox) getFellow("eGroup")).getValue());
-            }
-            
-            //If the egroup exists or it was successfully created (and added to OEM)
-            if ((eGroupExists || eGroupCreated) && addedToOEM) {
-                //Create instace object
-                Instance instance = new Instance();
-                instance.setOwner(((Textbox) getFellow("username")).getValue());
-                instance.setDbName(((Textbox) getFellow("dbName")).getValue());
-                instance.setEGroup(((Textbox) getFellow("eGroup")).getValue());
-                instance.setCategory(((String)((Combobox) getFellow("category")).getSelectedItem().getValue()));
-                instance.setCreationDate(new Date());
-                instance.setExpiryDate(((Datebox) getFellow("expiryDate")).getValue());
-                instance.setDbType(((String)((Combobox) getFellow("dbType")).getSelectedItem().getValue()));
-                instance.setVersion(((Textbox) getFellow("version")).getValue());
-                instance.setMaster(((Textbox) getFellow("master")).getValue());
-                instance.setHost(((Textbox) getFellow("host")).getValue());
-                instance.setDbSize(Integer.valueOf(((Textbox) getFellow("dbSize")).getValue()));
-                instance.setProject(((Textbox) getFellow("project")).getValue());
-                instance.setDescription(((Textbox) getFellow("description")).getValue());
-                instance.setStatus(CommonConstants.INSTANCE_STATUS_ACTIVE);
-                instance.setState(CommonConstants.INSTANCE_STATE_AWAITING_APPROVAL);
+        }
+        
+        //If the egroups exists or it was created adn  instance is Oracle 12c create OEM e-group
+        boolean addedToOEM = true;
+        if ((eGroupExists || eGroupCreated)
+                && CommonConstants.DB_TYPE_ORACLE_12.equals((String)((Combobox)getFellow("dbType")).getSelectedItem().getValue())) {
+            addedToOEM = eGroupHelper.addEgroupToOEM(((Textbox) getFellow("dbName")).getValue(),
+                                        ((Textbox) getFellow("eGroup")).getValue());
+        }
+        
+        //If the egroup exists or it was successfully created (and added to OEM)
+        if ((eGroupExists || eGroupCreated) && addedToOEM) {
+            //Create instace object
+            Instance instance = new Instance();
+            instance.setOwner(((Textbox) getFellow("username")).getValue());
+            instance.setDbName(((Textbox) getFellow("dbName")).getValue());
+            instance.setEGroup(((Textbox) getFellow("eGroup")).getValue());
+            instance.setCategory(((String)((Combobox) getFellow("category")).getSelectedItem().getValue()));
+            instance.setCreationDate(new Date());
+            instance.setExpiryDate(((Datebox) getFellow("expiryDate")).getValue());
+            instance.setDbType(((String)((Combobox) getFellow("dbType")).getSelectedItem().getValue()));
+            instance.setVersion(((Textbox) getFellow("version")).getValue());
+            instance.setMaster(((Textbox) getFellow("master")).getValue());
+            instance.setHost(((Textbox) getFellow("host")).getValue());
+            instance.setDbSize(Integer.valueOf(((Textbox) getFellow("dbSize")).getValue()));
+            instance.setProject(((Textbox) getFellow("project")).getValue());
+            instance.setDescription(((Textbox) getFellow("description")).getValue());
+            instance.setStatus(CommonConstants.INSTANCE_STATUS_ACTIVE);
+            instance.setState(CommonConstants.INSTANCE_STATE_AWAITING_APPROVAL);
 
-                //Insert object in DB
-                int result = instanceDAO.insert(instance);
+            //Insert object in DB
+            int result = instanceDAO.insert(instance);
 
-                //If the operation was succesful
-                if (result > 0) {
-                    //Hide window and redirect to the instance page
-                    this.setVisible(false);
-                    Sessions.getCurrent().setAttribute(CommonConstants.INSTANCE, instance);
-                    Executions.sendRedirect(CommonConstants.PAGE_INSTANCE + "?" + CommonConstants.INSTANCE + "=" + instance.getDbName());
-                }
-                else if (result == -1){
-                    ((Textbox) getFellow("dbName")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_INSTANCE_UNIQUE));
-                }
-                else{
-                    ((Textbox) getFellow("dbName")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_INSTANCE_CREATION));
-                }
+            //If the operation was succesful
+            if (result > 0) {
+                //Hide window and redirect to the instance page
+                this.setVisible(false);
+                Sessions.getCurrent().setAttribute(CommonConstants.INSTANCE, instance);
+                Executions.sendRedirect(CommonConstants.PAGE_INSTANCE + "?" + CommonConstants.INSTANCE + "=" + instance.getDbName());
+            }
+            else if (result == -1){
+                ((Textbox) getFellow("dbName")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_INSTANCE_UNIQUE));
             }
-            else {
-                ((Textbox) getFellow("eGroup")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_CREATION));
+            else{
+                ((Textbox) getFellow("dbName")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_INSTANCE_CREATION));
             }
         }
+        else {
+            ((Textbox) getFellow("eGroup")).setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_CREATION));
+        }
     }
     
     /**
-     * Checks if the owner of the database is a valid user, and if the account exists.
-     * @return true if the use is valid
+     * Validates the form. The checks that only need the values entered are
+     * done first, and only if they pass the user, the e-group and the master
+     * are looked up in parallel, waiting for all of them until a shared
+     * deadline. The results are then shown on the components.
+     * @return true if the form is valid.
      */
-    private boolean isUsernameValid () {
+    private boolean isFormValid() {
         Textbox username = (Textbox) getFellow("username");
-        UserInfo userInfo = FormValidations.isUsernameValid(username, authenticationHelper);
-        if (userInfo != null) {
+        Textbox eGroup = (Textbox) getFellow("eGroup");
+        Textbox master = (Textbox) getFellow("master");
+
+        //Local validations
+        if (!(FormValidations.isUsernameFormatValid(username)
+                & FormValidations.isDbNameValid((Textbox) getFellow("dbName"))
+                & FormValidations.isEGroupFormatValid(eGroup, (String)((Combobox)getFellow("dbType")).getSelectedItem().getValue())
+                & FormValidations.isCategoryValid((Combobox) getFellow("category"))
+                & FormValidations.isExpiryDateValid((Datebox) getFellow("expiryDate"))
+                & FormValidations.isDbTypeValid((Combobox) getFellow("dbType"))
+                & FormValidations.isVersionValid((Textbox) getFellow("version"))
+                & FormValidations.isMasterFormatValid(master)
+                & FormValidations.isHostValid((Textbox) getFellow("host"))
+                & FormValidations.isDbSizeValid((Textbox) getFellow("dbSize"))
+                & FormValidations.isProjectValid((Textbox) getFellow("project"))
+                & FormValidations.isDescriptionValid((Textbox) getFellow("description"))))
+            return false;
+
+        //Remote validations, in parallel (the components are only read and updated in this thread)
+        Future<UserInfo> pendingUser = authenticationHelper.getUserInfoAsync(username.getValue());
+        Future<EgroupType> pendingEGroup = null;
+        if (!eGroup.getValue().isEmpty())
+            pendingEGroup = eGroupHelper.findEgroupAsync(eGroup.getValue());
+        Future<Instance> pendingMaster = null;
+        if (!master.getValue().isEmpty())
+            pendingMaster = instanceDAO.selectByDbNameAsync(master.getValue(), null);
+        long deadline = AsyncHelper.getDeadline();
+        UserInfo userInfo = AsyncHelper.get(pendingUser, deadline);
+        EgroupType group = AsyncHelper.get(pendingEGroup, deadline);
+        Instance masterInstance = AsyncHelper.get(pendingMaster, deadline);
+
+        //Lookups that failed or timed out are not reported as missing values
+        boolean valid = true;
+        //Check if the user exists
+        if (!AsyncHelper.isCompleted(pendingUser)) {
+            username.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_USERNAME_WS));
+            valid = false;
+        }
+        else if (userInfo != null && userInfo.getCcid() > 0) {
             userCCID = userInfo.getCcid();
-            return true;
         }
-        else
-            return false;
+        else {
+            username.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_USERNAME_NOT_FOUND));
+            valid = false;
+        }
+        //Check if egroup is EGROUPS_ONLY (if the e-group could not be searched, do not offer to create it)
+        eGroupFound = group != null;
+        if (pendingEGroup != null && !AsyncHelper.isCompleted(pendingEGroup)) {
+            eGroup.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_SEARCH));
+            valid = false;
+        }
+        else if (EGroupHelper.isEgroupsOnly(group)) {
+            eGroup.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_EGROUPS_ONLY));
+            valid = false;
+        }
+        //Check that master exists
+        if (pendingMaster != null && !AsyncHelper.isCompleted(pendingMaster)) {
+            master.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_MASTER_SEARCH));
+            valid = false;
+        }
+        else if (pendingMaster != null && masterInstance == null) {
+            master.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_MASTER_DOES_NOT_EXIST));
+            valid = false;
+        }
+        return valid;
     }
-}
\ No newline at end of file
+}
@@ -16,12 +16,16 @@ import ch.cern.dbod.db.entity.Upgrade;
 import ch.cern.dbod.ui.model.OverviewTreeModel;
 import ch.cern.dbod.ui.renderer.OverviewTreeRenderer;
 import ch.cern.dbod.util.CommonConstants;
+import ch.cern.dbod.util.StateMonitor;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.zkoss.zk.ui.Execution;
 import org.zkoss.zk.ui.Executions;
 import org.zkoss.zk.ui.Sessions;
 import org.zkoss.zk.ui.WrongValueException;
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
 import org.zkoss.zk.ui.ext.AfterCompose;
 import org.zkoss.zk.ui.ext.BeforeCompose;
 import org.zkoss.zul.*;
@@ -135,6 +139,9 @@ public class OverviewController extends Vbox implements BeforeCompose, AfterComp
         
         displayOrHideAreas();
         
+        //Update states when they change
+        subscribeToStateChanges();
+        
         //Get show all from session
         Boolean showAll = (Boolean) Sessions.getCurrent().getAttribute(CommonConstants.ATTRIBUTE_USER_SHOW_ALL);
         if (showAll != null) {
@@ -166,6 +173,49 @@ public class OverviewController extends Vbox implements BeforeCompose, AfterComp
         }
     }
 
+    /**
+     * Subscribes this page to the changes of state of its instances.
+     */
+    private void subscribeToStateChanges() {
+        StateMonitor.subscribe(getDesktop(), getDbNames(), false, new EventListener<Event>() {
+            @Override
+            public void onEvent(Event event) {
+                updateStates((StateMonitor.StateChange) event.getData());
+            }
+        });
+    }
+
+    /**
+     * Gets the DB names of the instances in the page.
+     * @return list of DB names.
+     */
+    private List<String> getDbNames() {
+        List<String> dbNames = new ArrayList<>();
+        if (instances != null) {
+            for (Instance instance : instances)
+                dbNames.add(instance.getDbName());
+        }
+        return dbNames;
+    }
+
+    /**
+     * Updates the state of the instances whose state changed, re-rendering
+     * only their nodes.
+     * @param change changes pushed by the state monitor.
+     */
+    private void updateStates(StateMonitor.StateChange change) {
+        Tree tree = (Tree) getFellow("overviewTree");
+        if (instances == null || tree.getModel() == null)
+            return;
+        for (Instance instance : instances) {
+            Instance updated = change.getInstances().get(instance.getDbName());
+            if (updated != null) {
+                instance.setState(updated.getState());
+                ((OverviewTreeModel) tree.getModel()).updateInstance(instance);
+            }
+        }
+    }
+
     /**
      * Refreshes the list of instances.
      */
@@ -198,6 +248,9 @@ public class OverviewController extends Vbox implements BeforeCompose, AfterComp
         }
         catch (WrongValueException ex) {}
         
+        //Watch the refreshed instances
+        subscribeToStateChanges();
+        
         displayOrHideAreas();
     }
     
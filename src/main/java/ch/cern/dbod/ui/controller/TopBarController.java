@@ -11,7 +11,7 @@ package ch.cern.dbod.ui.controller;
 
 import ch.cern.dbod.util.ConfigLoader;
 import ch.cern.dbod.util.CommonConstants;
-import ch.cern.dbod.util.EGroupHelper;
+import ch.cern.dbod.util.GroupMembership;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
@@ -58,7 +58,7 @@ public class TopBarController extends Div implements BeforeCompose, AfterCompose
         eGroups = execution.getHeader(CommonConstants.ADFS_GROUP);
 
         //Only show admin link if the user is admin
-        admin = EGroupHelper.groupInList(ConfigLoader.getProperty(CommonConstants.ADMIN_E_GROUP), eGroups);
+        admin = GroupMembership.get(execution).isAdmin();
         
         //Get authenticated user's name
         username = execution.getHeader(CommonConstants.ADFS_LOGIN);
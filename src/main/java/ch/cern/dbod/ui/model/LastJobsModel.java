@@ -21,7 +21,7 @@ import org.zkoss.zul.ext.Sortable;
  * Represents the list of last executed jobs.
  * @author Jose Andres Cordero Benitez
  */
-public class LastJobsModel extends AbstractListModel implements Sortable {
+public class LastJobsModel extends AbstractListModel<Job> implements Sortable<Job> {
     /**
      * Last jobs information in the model.
      */
@@ -33,7 +33,7 @@ public class LastJobsModel extends AbstractListModel implements Sortable {
     /**
      * Comparator to sort the jobs once they are reloaded.
      */
-    private Comparator comparator;
+    private Comparator<Job> comparator;
 
     /**
      * Constructor for this class, passing the list of jobs as a parameter.
@@ -44,11 +44,14 @@ public class LastJobsModel extends AbstractListModel implements Sortable {
     }
     
     /**
-     * Sets the list of jobs.
+     * Sets the list of jobs, keeping the current sort order.
      * @param jobs list of jobs.
      */
     public void setJobs(List<Job> jobs) {
         this.jobs = jobs;
+        if (comparator != null)
+            Collections.sort(jobs, comparator);
+        fireEvent(ListDataEvent.CONTENTS_CHANGED, -1, -1);
     }
 
     /**
@@ -66,7 +69,7 @@ public class LastJobsModel extends AbstractListModel implements Sortable {
      * @return the job.
      */
     @Override
-    public Object getElementAt(int index) {
+    public Job getElementAt(int index) {
         return jobs.get(index);
     }
 
@@ -76,7 +79,7 @@ public class LastJobsModel extends AbstractListModel implements Sortable {
      * @param ascending indicates if the order is ascending or descending.
      */
     @Override
-    public void sort(Comparator comparator, boolean ascending) {
+    public void sort(Comparator<Job> comparator, boolean ascending) {
         this.ascending = ascending;
         this.comparator = comparator;
         Collections.sort(jobs, comparator);
@@ -89,7 +92,7 @@ public class LastJobsModel extends AbstractListModel implements Sortable {
      * @return ascending or descending
      */
     @Override
-    public String getSortDirection(Comparator cmprtr) {
+    public String getSortDirection(Comparator<Job> cmprtr) {
         if (ascending)
             return "ascending";
         else
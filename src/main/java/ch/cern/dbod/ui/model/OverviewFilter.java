@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.ui.model;
+
+import ch.cern.dbod.db.entity.Instance;
+import ch.cern.dbod.util.CommonConstants;
+import org.zkoss.zul.Combobox;
+import org.zkoss.zul.Textbox;
+import org.zkoss.zul.Tree;
+
+/**
+ * Criteria of the overview filter fields. The values of the fields are read,
+ * trimmed and lower-cased once, so filtering a list of instances does not
+ * touch the components again.
+ */
+public final class OverviewFilter {
+
+    private final String dbName;
+    private final String host;
+    private final String owner;
+    private final String eGroup;
+    private final String project;
+    private final String category;
+    private final String dbType;
+    private final String action;
+
+    /**
+     * Constructor of this class. Text criteria are expected in lower case.
+     */
+    OverviewFilter(String dbName, String host, String owner, String eGroup, String project,
+            String category, String dbType, String action) {
+        this.dbName = dbName;
+        this.host = host;
+        this.owner = owner;
+        this.eGroup = eGroup;
+        this.project = project;
+        this.category = category;
+        this.dbType = dbType;
+        this.action = action;
+    }
+
+    /**
+     * Reads the criteria from the filter fields of a tree.
+     * @param tree tree whose fellows are the filter fields.
+     * @return filter with the current values of the fields.
+     */
+    public static OverviewFilter fromTree(Tree tree) {
+        return new OverviewFilter(textValue(tree, "dbNameFilter"),
+                textValue(tree, "hostFilter"),
+                textValue(tree, "usernameFilter"),
+                textValue(tree, "eGroupFilter"),
+                textValue(tree, "projectFilter"),
+                comboValue(tree, "categoryFilter"),
+                comboValue(tree, "dbTypeFilter"),
+                comboValue(tree, "actionFilter"));
+    }
+
+    private static String textValue(Tree tree, String id) {
+        return ((Textbox) tree.getFellow(id)).getValue().trim().toLowerCase();
+    }
+
+    private static String comboValue(Tree tree, String id) {
+        Combobox combobox = (Combobox) tree.getFellow(id);
+        if (combobox.getSelectedItem() != null)
+            return ((String) combobox.getSelectedItem().getValue()).trim();
+        return "";
+    }
+
+    /**
+     * Checks if an instance matches the filter.
+     * @param instance instance to check.
+     * @return true if the instance is filtered, false otherwise.
+     */
+    public boolean accepts(Instance instance) {
+        if (contains(instance.getDbName(), dbName)
+                && contains(instance.getHost(), host)
+                && contains(instance.getOwner(), owner)
+                && contains(instance.getEGroup(), eGroup)
+                && contains(instance.getProject(), project)
+                && (category.isEmpty() || category.equals(instance.getCategory()))
+                && (dbType.isEmpty() || dbType.equals(instance.getDbType()))) {
+            if (action.isEmpty()) {
+                return true;
+            }
+            else {
+                //Check actions (a bit different behaviour)
+                String state = instance.getState();
+                return (action.equals(CommonConstants.JOB_STARTUP) && CommonConstants.INSTANCE_STATE_STOPPED.equals(state))
+                        || (action.equals(CommonConstants.JOB_SHUTDOWN) && (CommonConstants.INSTANCE_STATE_RUNNING.equals(state)
+                                                                        || CommonConstants.INSTANCE_STATE_BUSY.equals(state)
+                                                                        || CommonConstants.INSTANCE_STATE_UNKNOWN.equals(state)))
+                        || (action.equals(CommonConstants.JOB_UPGRADE) && instance.getUpgradeTo() != null && !instance.getUpgradeTo().isEmpty());
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String value, String term) {
+        return term.isEmpty() || (value != null && value.toLowerCase().contains(term));
+    }
+
+    public String getDbName() {
+        return dbName;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getEGroup() {
+        return eGroup;
+    }
+
+    public String getProject() {
+        return project;
+    }
+}
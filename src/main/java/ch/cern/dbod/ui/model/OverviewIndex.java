@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.ui.model;
+
+import ch.cern.dbod.db.entity.Instance;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over the text fields used by the overview filter (DB name,
+ * host, owner, e-group and project). It narrows down the instances that can
+ * match a filter, which are then checked with {@link OverviewFilter#accepts}.
+ */
+final class OverviewIndex {
+
+    /**
+     * Length of the grams in the index.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * Prefixes of the indexed fields: DB name, host, owner, e-group and project.
+     */
+    private static final char[] FIELDS = {'d', 'h', 'o', 'e', 'p'};
+
+    /**
+     * Instances indexed, in the order they were given.
+     */
+    private final List<Instance> instances;
+
+    /**
+     * Values of the fields (in the order of FIELDS) indexed for each position.
+     */
+    private final String[][] values;
+
+    /**
+     * Instances (by position) containing each gram. Keys are prefixed by the
+     * field the gram comes from.
+     */
+    private final Map<String, BitSet> grams = new HashMap<>();
+
+    /**
+     * Builds the index for a list of instances.
+     * @param instances instances to index.
+     */
+    OverviewIndex(List<Instance> instances) {
+        this.instances = instances;
+        this.values = new String[instances.size()][];
+        for (int i = 0; i < instances.size(); i++) {
+            values[i] = getValues(instances.get(i));
+            for (int f = 0; f < FIELDS.length; f++)
+                add(FIELDS[f], values[i][f], i);
+        }
+    }
+
+    /**
+     * Checks if this index was built for a list of instances.
+     * @param list list of instances.
+     * @return true if the index covers exactly that list.
+     */
+    boolean covers(List<Instance> list) {
+        return list == instances && list.size() == values.length;
+    }
+
+    /**
+     * Re-indexes the positions whose indexed fields changed since they were
+     * indexed (instances edited in place or replaced in the list).
+     */
+    void update() {
+        for (int i = 0; i < values.length; i++) {
+            String[] current = getValues(instances.get(i));
+            for (int f = 0; f < FIELDS.length; f++) {
+                if (current[f] == null ? values[i][f] != null : !current[f].equals(values[i][f])) {
+                    remove(FIELDS[f], values[i][f], i);
+                    add(FIELDS[f], current[f], i);
+                }
+            }
+            values[i] = current;
+        }
+    }
+
+    private static String[] getValues(Instance instance) {
+        return new String[] {instance.getDbName(), instance.getHost(), instance.getOwner(),
+                                instance.getEGroup(), instance.getProject()};
+    }
+
+    private void add(char field, String value, int position) {
+        if (value == null)
+            return;
+        String lower = value.toLowerCase();
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            String key = field + lower.substring(i, i + GRAM);
+            BitSet bits = grams.get(key);
+            if (bits == null) {
+                bits = new BitSet(values.length);
+                grams.put(key, bits);
+            }
+            bits.set(position);
+        }
+    }
+
+    private void remove(char field, String value, int position) {
+        if (value == null)
+            return;
+        String lower = value.toLowerCase();
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            String key = field + lower.substring(i, i + GRAM);
+            BitSet bits = grams.get(key);
+            if (bits != null) {
+                bits.clear(position);
+                if (bits.isEmpty())
+                    grams.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the instances that may match the text criteria of a filter.
+     * @param filter filter to apply.
+     * @return DB names of the candidate instances, or null if the filter has no criteria
+     * long enough to use the index (every instance is a candidate).
+     */
+    Set<String> candidates(OverviewFilter filter) {
+        BitSet result = null;
+        result = restrict(result, 'd', filter.getDbName());
+        result = restrict(result, 'h', filter.getHost());
+        result = restrict(result, 'o', filter.getOwner());
+        result = restrict(result, 'e', filter.getEGroup());
+        result = restrict(result, 'p', filter.getProject());
+        if (result == null)
+            return null;
+
+        Set<String> candidates = new HashSet<>(result.cardinality() * 2);
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1))
+            candidates.add(instances.get(i).getDbName());
+        return candidates;
+    }
+
+    private BitSet restrict(BitSet result, char field, String term) {
+        if (term.length() < GRAM)
+            return result;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            BitSet bits = grams.get(field + term.substring(i, i + GRAM));
+            if (bits == null)
+                return new BitSet();
+            if (result == null) {
+                result = (BitSet) bits.clone();
+            }
+            else {
+                result.and(bits);
+            }
+        }
+        return result;
+    }
+}
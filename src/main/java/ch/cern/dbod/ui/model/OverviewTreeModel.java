@@ -11,17 +11,25 @@ package ch.cern.dbod.ui.model;
 
 import ch.cern.dbod.db.entity.Instance;
 import ch.cern.dbod.util.CommonConstants;
+import ch.cern.dbod.util.ConfigLoader;
 import ch.cern.dbod.util.TreeNodeComparator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.zkoss.zul.*;
 import org.zkoss.zul.event.TreeDataEvent;
 import org.zkoss.zul.ext.Sortable;
 
 /**
- * Model for overview tree.
+ * Model for overview tree. The filtered and sorted rows are kept as plain
+ * instances, and tree nodes are only built for the rows the tree actually
+ * asks for (the visible page and the slaves of those rows).
  * @author Daniel Gomez Blanco
  */
 public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
@@ -32,6 +40,31 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
     Tree tree;
     private Comparator _sorting;
     
+    /**
+     * Top level rows of the tree, filtered and sorted.
+     */
+    private List<Row> rows = new ArrayList<>();
+    
+    /**
+     * Path in the tree of every displayed instance, by DB name.
+     */
+    private Map<String, int[]> paths = new HashMap<>();
+    
+    /**
+     * Top level nodes already built, by index.
+     */
+    private final Map<Integer, OverviewTreeNode> nodes = new HashMap<>();
+    
+    /**
+     * Default minimum number of instances to build a text index for the filters.
+     */
+    private static final int DEFAULT_INDEX_THRESHOLD = 1000;
+    
+    /**
+     * Text index of the last list of instances, if it was big enough.
+     */
+    private OverviewIndex index;
+    
     /**
      * Constructor of this class.
      * @param instances list of instances to make a tree of
@@ -46,68 +79,326 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
     }
     
     /**
-     * Gets a list of nodes representing the tree of instances
+     * Gets the list of rows representing the tree of instances. Replicas are
+     * attached to the instance named as their master, so chains of replicas
+     * and masters with several replicas are supported. Replicas whose master
+     * is not in the list are shown at the top level.
      * @param instances list of instances to make a tree of
-     * @return list of nodes with master/slave relations
+     * @return list of rows with master/slave relations
      */
-    private ArrayList<OverviewTreeNode> getNodeList (List<Instance> instances) {
-        ArrayList<OverviewTreeNode> nodeList = new ArrayList<>();
-        ArrayList<Instance> masters = new ArrayList<>();
-        ArrayList<Instance> slaves = new ArrayList<>();
+    private ArrayList<Row> getRowList (List<Instance> instances) {
+        //Read the filter fields once for the whole list
+        OverviewFilter filter = OverviewFilter.fromTree(tree);
+        Set<String> candidates = getIndex(instances) != null ? index.candidates(filter) : null;
         
-        //Separate masters and slaves and create single and shared isntances
+        //Index instances and replicas by DB name
+        Map<String, Instance> byName = new HashMap<>(instances.size() * 2);
+        for (Instance instance : instances)
+            byName.put(instance.getDbName(), instance);
+        Map<String, List<Instance>> replicas = new HashMap<>();
         for (Instance instance : instances) {
-            //Masters and slaves are treated later
-            if (instance.getSlave() != null) {
-                masters.add(instance);
-            }
-            else if (instance.getMaster() != null) {
-                slaves.add(instance);
-            }
-            else {
-                //Only add instance to tree if it is filtered
-                if (filterInstance(instance)) {
-                    nodeList.add(new OverviewTreeNode(instance));
+            if (instance.getMaster() != null && byName.containsKey(instance.getMaster())) {
+                List<Instance> list = replicas.get(instance.getMaster());
+                if (list == null) {
+                    list = new ArrayList<>();
+                    replicas.put(instance.getMaster(), list);
                 }
+                list.add(instance);
             }
         }
         
-        //Merge masters and slaves
-        for (Instance master : masters) {
-            ArrayList<OverviewTreeNode> slavesList =  new ArrayList<>();
-            for (Instance slave : slaves) {
-                if (slave.getMaster().equals(master.getDbName()) && filterInstance(slave)) {
-                    slavesList.add(new OverviewTreeNode(slave));
+        //Single instances go first and masters after them, as ties keep this order when sorting
+        ArrayList<Row> rowList = new ArrayList<>();
+        ArrayList<Row> masterRows = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        for (Instance instance : instances) {
+            if (instance.getMaster() == null || !byName.containsKey(instance.getMaster())) {
+                Row row = buildRow(instance, replicas, filter, candidates, visited);
+                if (row != null) {
+                    if (instance.getSlave() != null || replicas.containsKey(instance.getDbName()))
+                        masterRows.add(row);
+                    else
+                        rowList.add(row);
                 }
             }
-            //If there are filtered slaves
-            if (slavesList.size() > 0) {
-                nodeList.add(new OverviewTreeNode(master, slavesList));
-            }
-            else {
-                if (filterInstance(master)) {
-                    nodeList.add(new OverviewTreeNode(master));
+        }
+        //Instances only reachable through circular replication
+        if (visited.size() < byName.size()) {
+            for (Instance instance : instances) {
+                if (!visited.contains(instance.getDbName())) {
+                    Row row = buildRow(instance, replicas, filter, candidates, visited);
+                    if (row != null)
+                        masterRows.add(row);
                 }
             }
         }
+        rowList.addAll(masterRows);
         
-        //Sort node list
-        Collections.sort(nodeList, _sorting);
+        //Sort row list
+        sortRows(rowList);
         
-        return nodeList;
+        return rowList;
+    }
+    
+    /**
+     * Builds the row of an instance and its filtered replicas.
+     * @param instance instance of the row
+     * @param replicas replicas of each instance, by DB name of the master
+     * @param filter criteria of the filter fields
+     * @param candidates DB names of the instances that may match the filter according to the index, or null
+     * @param visited DB names already in the tree, to stop on circular replication
+     * @return the row, or null if neither the instance nor its replicas are filtered
+     */
+    private Row buildRow (Instance instance, Map<String, List<Instance>> replicas, OverviewFilter filter,
+            Set<String> candidates, Set<String> visited) {
+        if (!visited.add(instance.getDbName()))
+            return null;
+        ArrayList<Row> children = null;
+        List<Instance> list = replicas.get(instance.getDbName());
+        if (list != null) {
+            for (Instance replica : list) {
+                Row child = buildRow(replica, replicas, filter, candidates, visited);
+                if (child != null) {
+                    if (children == null)
+                        children = new ArrayList<>(list.size());
+                    children.add(child);
+                }
+            }
+        }
+        //If there are filtered replicas the instance is always shown
+        if (children != null || filterInstance(filter, candidates, instance))
+            return new Row(instance, children);
+        return null;
+    }
+    
+    /**
+     * Gets the text index for a list of instances, building it if the list
+     * changed and is big enough to benefit from it. If the list is the same,
+     * the instances whose indexed fields changed (in place, by updateInstance
+     * or by refreshInstances) are re-indexed.
+     * @param instances list of instances.
+     * @return index of the list, or null if the list is too small.
+     */
+    private OverviewIndex getIndex (List<Instance> instances) {
+        if (instances.size() < ConfigLoader.getIntProperty(CommonConstants.OVERVIEW_INDEX_THRESHOLD, DEFAULT_INDEX_THRESHOLD))
+            index = null;
+        else if (index == null || !index.covers(instances))
+            index = new OverviewIndex(instances);
+        else
+            index.update();
+        return index;
+    }
+    
+    /**
+     * Filters an instance considering the information contained in the filter fields.
+     * @param filter criteria of the filter fields
+     * @param candidates DB names of the instances that may match the filter according to the index, or null
+     * @param instance Instance to be filtered
+     * @return true if the instance is filtered, false otherwise
+     */
+    private boolean filterInstance (OverviewFilter filter, Set<String> candidates, Instance instance) {
+        return (candidates == null || candidates.contains(instance.getDbName())) && filter.accepts(instance);
+    }
+    
+    /**
+     * Sorts the rows with the current comparator.
+     * @param rowList rows to sort.
+     */
+    private void sortRows (List<Row> rowList) {
+        if (_sorting instanceof TreeNodeComparator) {
+            final TreeNodeComparator comparator = (TreeNodeComparator) _sorting;
+            Collections.sort(rowList, new Comparator<Row>() {
+                @Override
+                public int compare(Row r1, Row r2) {
+                    return comparator.compare(r1.instance, r2.instance);
+                }
+            });
+        }
+        else if (_sorting != null) {
+            //Comparators given to sort() compare the nodes of the tree
+            @SuppressWarnings("unchecked")
+            final Comparator<OverviewTreeNode> comparator = _sorting;
+            Collections.sort(rowList, new Comparator<Row>() {
+                @Override
+                public int compare(Row r1, Row r2) {
+                    return comparator.compare(new OverviewTreeNode(r1.instance), new OverviewTreeNode(r2.instance));
+                }
+            });
+        }
+    }
+    
+    /**
+     * Sets the rows displayed by the tree, and computes the path of every instance.
+     * @param rowList new rows.
+     */
+    private void setRows (List<Row> rowList) {
+        Map<String, int[]> newPaths = new HashMap<>();
+        addPaths(rowList, new int[0], newPaths);
+        rows = rowList;
+        paths = newPaths;
+        nodes.clear();
+    }
+    
+    /**
+     * Computes the path of every instance in a list of rows and their children.
+     * @param rowList rows to compute the paths of.
+     * @param parentPath path of the parent of the rows.
+     * @param newPaths map where paths are stored.
+     */
+    private void addPaths (List<Row> rowList, int[] parentPath, Map<String, int[]> newPaths) {
+        for (int i = 0; i < rowList.size(); i++) {
+            Row row = rowList.get(i);
+            int[] path = Arrays.copyOf(parentPath, parentPath.length + 1);
+            path[parentPath.length] = i;
+            newPaths.put(row.instance.getDbName(), path);
+            if (row.children != null)
+                addPaths(row.children, path, newPaths);
+        }
     }
     
     /**
-     * Set the instances in the model (does not fire event to refresh view)
+     * Set the instances in the model and refreshes the view
      * @param instances new list of instances
      */
     public final void setInstances (List<Instance> instances) {
-        List<OverviewTreeNode> children = ((OverviewTreeNode)this.getRoot()).getChildren();
-        List<OverviewTreeNode> nodeList = getNodeList(instances);
-        children.removeAll(children);
-        children.addAll(nodeList);
+        setRows(getRowList(instances));
         fireEvent(TreeDataEvent.STRUCTURE_CHANGED, new int[0], 0, 0);
     }
+    
+    /**
+     * Refreshes the instances in the model. If the refreshed instances produce
+     * the same rows (same instances in the same positions), only the nodes
+     * whose instance changed are re-rendered. Otherwise the whole tree is.
+     * @param instances refreshed list of instances
+     */
+    public void refreshInstances (List<Instance> instances) {
+        List<Row> newRows = getRowList(instances);
+        if (!sameRows(rows, newRows)) {
+            setRows(newRows);
+            fireEvent(TreeDataEvent.STRUCTURE_CHANGED, new int[0], 0, 0);
+            return;
+        }
+        for (int i = 0; i < rows.size(); i++)
+            updateRow(rows.get(i), newRows.get(i), new int[] {i});
+    }
+    
+    /**
+     * Checks if two lists of rows have the same instances in the same positions.
+     * @param oldRows rows currently displayed.
+     * @param newRows refreshed rows.
+     * @return true if both lists have the same structure.
+     */
+    private boolean sameRows (List<Row> oldRows, List<Row> newRows) {
+        if (oldRows == null || newRows == null)
+            return oldRows == newRows;
+        if (oldRows.size() != newRows.size())
+            return false;
+        for (int i = 0; i < oldRows.size(); i++) {
+            Row oldRow = oldRows.get(i);
+            Row newRow = newRows.get(i);
+            if (!oldRow.instance.getDbName().equals(newRow.instance.getDbName())
+                    || !sameRows(oldRow.children, newRow.children))
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Replaces the instances of a row (and its children) with the refreshed
+     * ones, re-rendering the nodes whose displayed information changed.
+     * @param row row currently displayed.
+     * @param newRow refreshed row, with the same structure.
+     * @param path path of the row.
+     */
+    private void updateRow (Row row, Row newRow, int[] path) {
+        boolean changed = isChanged(row.instance, newRow.instance);
+        row.instance = newRow.instance;
+        if (nodes.containsKey(path[0])) {
+            OverviewTreeNode node = getNode(path);
+            node.setData(newRow.instance);
+            if (changed)
+                updateNode(node);
+        }
+        if (row.children != null) {
+            for (int i = 0; i < row.children.size(); i++) {
+                int[] childPath = Arrays.copyOf(path, path.length + 1);
+                childPath[path.length] = i;
+                updateRow(row.children.get(i), newRow.children.get(i), childPath);
+            }
+        }
+    }
+    
+    /**
+     * Checks if the information displayed for an instance changed (every
+     * field read by the renderer).
+     * @param oldInstance instance currently displayed.
+     * @param newInstance refreshed instance.
+     * @return true if the node of the instance has to be re-rendered.
+     */
+    private static boolean isChanged (Instance oldInstance, Instance newInstance) {
+        return oldInstance.isChecked() != newInstance.isChecked()
+                || !equal(oldInstance.getDbName(), newInstance.getDbName())
+                || !equal(getLogin(oldInstance), getLogin(newInstance))
+                || !equal(oldInstance.getState(), newInstance.getState())
+                || !equal(oldInstance.getStatus(), newInstance.getStatus())
+                || !equal(oldInstance.getHost(), newInstance.getHost())
+                || !equal(oldInstance.getOwner(), newInstance.getOwner())
+                || !equal(oldInstance.getEGroup(), newInstance.getEGroup())
+                || !equal(oldInstance.getProject(), newInstance.getProject())
+                || !equal(oldInstance.getCategory(), newInstance.getCategory())
+                || !equal(oldInstance.getDbType(), newInstance.getDbType())
+                || !equal(oldInstance.getVersion(), newInstance.getVersion())
+                || !equal(oldInstance.getUpgradeTo(), newInstance.getUpgradeTo());
+    }
+    
+    private static String getLogin (Instance instance) {
+        return instance.getUser() != null ? instance.getUser().getLogin() : null;
+    }
+    
+    private static boolean equal (Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+    
+    /**
+     * Gets the node of a top level row, building it if necessary.
+     * @param index index of the row.
+     * @return node for the row.
+     */
+    private OverviewTreeNode getRowNode (int index) {
+        OverviewTreeNode node = nodes.get(index);
+        if (node == null) {
+            node = createNode(rows.get(index));
+            node.attachTo((OverviewTreeNode) getRoot());
+            nodes.put(index, node);
+        }
+        return node;
+    }
+    
+    /**
+     * Creates the node of a row and its children.
+     * @param row row to create the node for.
+     * @return node for the row.
+     */
+    private OverviewTreeNode createNode (Row row) {
+        if (row.children == null)
+            return new OverviewTreeNode(row.instance);
+        ArrayList<OverviewTreeNode> childNodes = new ArrayList<>(row.children.size());
+        for (Row child : row.children)
+            childNodes.add(createNode(child));
+        return new OverviewTreeNode(row.instance, childNodes);
+    }
+    
+    /**
+     * Gets the node at a given path, building its top level row if necessary.
+     * @param path path of the node.
+     * @return node at the path.
+     */
+    private OverviewTreeNode getNode (int[] path) {
+        OverviewTreeNode node = getRowNode(path[0]);
+        for (int i = 1; i < path.length; i++)
+            node = (OverviewTreeNode) node.getChildAt(path[i]);
+        return node;
+    }
 
     /**
      * Get if a given object is a leaf or not.
@@ -116,6 +407,8 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
      */
     @Override
     public boolean isLeaf(Object node) {
+        if (node == getRoot())
+            return false;
         return ((OverviewTreeNode)node).isLeaf();
     }
 
@@ -127,6 +420,8 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
      */
     @Override
     public Object getChild(Object node, int i) {
+        if (node == getRoot())
+            return i >= 0 && i < rows.size() ? getRowNode(i) : null;
         if (((OverviewTreeNode)node).getChildren() != null)
             return ((OverviewTreeNode)node).getChildAt(i);
         else
@@ -140,6 +435,8 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
      */
     @Override
     public int getChildCount(Object node) {
+        if (node == getRoot())
+            return rows.size();
         if (((OverviewTreeNode)node).getChildren() != null)
             return ((OverviewTreeNode)node).getChildCount();
         else
@@ -147,49 +444,37 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
     }
     
     /**
-     * Filters an instance considering the information contained in the filter fields.
-     * @param instance Instance to be filtered
-     * @return true if the instance is filtered, false otherwise
+     * Gets the path of a node without walking the whole tree.
+     * @param child node to get the path of.
+     * @return path of the node, or an empty path if it is not displayed.
      */
-    private boolean filterInstance (Instance instance) {
-        //Get field values
-        String dbName = ((Textbox) tree.getFellow("dbNameFilter")).getValue().trim();
-        String host = ((Textbox) tree.getFellow("hostFilter")).getValue().trim();
-        String user = ((Textbox) tree.getFellow("usernameFilter")).getValue().trim();
-        String eGroup = ((Textbox) tree.getFellow("eGroupFilter")).getValue().trim();
-        String category = "";
-        if (((Combobox)tree.getFellow("categoryFilter")).getSelectedItem() != null)
-            category = ((String)((Combobox)tree.getFellow("categoryFilter")).getSelectedItem().getValue()).trim();
-        String project = ((Textbox) tree.getFellow("projectFilter")).getValue().trim();
-        String dbType = "";
-        if (((Combobox) tree.getFellow("dbTypeFilter")).getSelectedItem() != null)
-            dbType = ((String)((Combobox) tree.getFellow("dbTypeFilter")).getSelectedItem().getValue()).trim();
-        String action = "";
-        if (((Combobox) tree.getFellow("actionFilter")).getSelectedItem() != null)
-            action = ((String)((Combobox) tree.getFellow("actionFilter")).getSelectedItem().getValue()).trim();
-        
-        if (instance.getDbName().toLowerCase().indexOf(dbName.trim().toLowerCase()) >= 0
-                && instance.getHost().toLowerCase().indexOf(host.trim().toLowerCase()) >= 0
-                && instance.getOwner().toLowerCase().indexOf(user.trim().toLowerCase()) >= 0
-                && (eGroup.isEmpty() || (instance.getEGroup() != null && instance.getEGroup().toLowerCase().indexOf(eGroup.trim().toLowerCase()) >= 0))
-                && (project.isEmpty() || (instance.getProject() != null && instance.getProject().toLowerCase().indexOf(project.trim().toLowerCase()) >= 0))
-                && (category.isEmpty() || instance.getCategory().equals(category))
-                && (dbType.isEmpty() || instance.getDbType().equals(dbType))) {
-            if (action.isEmpty()) {
-                return true;
-            }
-            else {
-                //Check actions (a bit different behaviour)
-                if ((action.equals(CommonConstants.JOB_STARTUP) && instance.getState().equals(CommonConstants.INSTANCE_STATE_STOPPED))
-                        || (action.equals(CommonConstants.JOB_SHUTDOWN) && (instance.getState().equals(CommonConstants.INSTANCE_STATE_RUNNING)
-                                                                        || instance.getState().equals(CommonConstants.INSTANCE_STATE_BUSY)
-                                                                        || instance.getState().equals(CommonConstants.INSTANCE_STATE_UNKNOWN)))
-                        || (action.equals(CommonConstants.JOB_UPGRADE) && instance.getUpgradeTo() != null && !instance.getUpgradeTo().isEmpty()))
-                    return true;
-            }
+    @Override
+    public int[] getPath(Object child) {
+        if (child instanceof OverviewTreeNode && ((OverviewTreeNode) child).getData() instanceof Instance) {
+            int[] path = paths.get(((Instance) ((OverviewTreeNode) child).getData()).getDbName());
+            if (path != null)
+                return path.clone();
         }
-        return false;
-        
+        return new int[0];
+    }
+    
+    /**
+     * Gets the index of a node in its parent.
+     * @param parent parent node.
+     * @param child child node.
+     * @return index of the child, or -1 if it is not a child of the parent.
+     */
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        int[] path = getPath(child);
+        int[] parentPath = getPath(parent);
+        if (path.length != parentPath.length + 1)
+            return -1;
+        for (int i = 0; i < parentPath.length; i++) {
+            if (path[i] != parentPath[i])
+                return -1;
+        }
+        return path[parentPath.length];
     }
     
     /**
@@ -198,16 +483,22 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
      * @param checked true or false, depending if the action is checking or unchecking.
      */
     public void checkAll (OverviewTreeNode root, boolean checked) {
-        if (root.getData() instanceof Instance) {
-            ((Instance)root.getData()).setChecked(checked);
-            //Rerender node
-            int[] path = this.getPath(root.getParent());
-            int index = root.getParent().getIndex(root);
-            fireEvent(TreeDataEvent.CONTENTS_CHANGED, path, index, index);
+        if (root != getRoot()) {
+            if (root.getData() instanceof Instance) {
+                ((Instance)root.getData()).setChecked(checked);
+                updateNode(root);
+            }
+            for (int i=0; i < root.getChildCount(); i++)
+                checkAll((OverviewTreeNode)root.getChildAt(i), checked);
+            return;
         }
-        for (int i=0; i < root.getChildCount(); i++)
-            checkAll((OverviewTreeNode)root.getChildAt(i), checked);
-}
+        for (int i=0; i < rows.size(); i++) {
+            rows.get(i).setChecked(checked);
+            //Rerender only the nodes already built
+            if (nodes.containsKey(i))
+                checkAll(nodes.get(i), checked);
+        }
+    }
     
     /**
      * Gets the list of checked nodes.
@@ -216,10 +507,18 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
      */
     public List<OverviewTreeNode> getChecked (OverviewTreeNode root) {
         List<OverviewTreeNode> checked = new ArrayList<>();
-        if (root.getData() instanceof Instance && ((Instance)root.getData()).isChecked())
-            checked.add(root);
-        for (int i=0; i < root.getChildCount(); i++)
-            checked.addAll(getChecked((OverviewTreeNode)root.getChildAt(i)));
+        if (root != getRoot()) {
+            if (root.getData() instanceof Instance && ((Instance)root.getData()).isChecked())
+                checked.add(root);
+            for (int i=0; i < root.getChildCount(); i++)
+                checked.addAll(getChecked((OverviewTreeNode)root.getChildAt(i)));
+            return checked;
+        }
+        for (int i=0; i < rows.size(); i++) {
+            //Only build the nodes of rows with checked instances
+            if (rows.get(i).hasChecked())
+                checked.addAll(getChecked(getRowNode(i)));
+        }
         return checked;
     }
     
@@ -228,38 +527,34 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
      * @param instance instance to update
      */
     public void updateInstance (Instance instance) {
-        OverviewTreeNode node = searchNode((OverviewTreeNode)this.getRoot(),instance);
-        if (node != null) {
-            node.setData(instance);
-            updateNode(node);
+        int[] path = paths.get(instance.getDbName());
+        if (path != null) {
+            Row row = rows.get(path[0]);
+            for (int i = 1; i < path.length; i++)
+                row = row.children.get(path[i]);
+            row.instance = instance;
+            if (nodes.containsKey(path[0])) {
+                OverviewTreeNode node = getNode(path);
+                node.setData(instance);
+                updateNode(node);
+            }
         }
     }
     
     /**
-     * Searches a node corresponding to a certain instance in the subtree
+     * Searches a node corresponding to a certain instance in the tree
      * @param root node to start from
      * @param instance instance to search for
      * @return node corresponding to the given instance
      */
     public OverviewTreeNode searchNode (OverviewTreeNode root, Instance instance) {
-        if (root.getData() instanceof Instance) {
-            if (root.getData().equals(instance)) {
-                //Rerender node
-                int[] path = this.getPath(root.getParent());
-                int index = root.getParent().getIndex(root);
-                fireEvent(TreeDataEvent.CONTENTS_CHANGED, path, index, index);
-                return root;
-            }
-        }
-        
-        for (int i=0; i < root.getChildCount(); i++) {
-            OverviewTreeNode node = searchNode((OverviewTreeNode)root.getChildAt(i), instance);
-            if (node != null) {
-                return node;
-            }
-        }
-        
-        return null;
+        int[] path = paths.get(instance.getDbName());
+        if (path == null)
+            return null;
+        OverviewTreeNode node = getNode(path);
+        //Rerender node
+        updateNode(node);
+        return node;
     }
     
     /**
@@ -267,23 +562,23 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
      * @param node 
      */
     public void updateNode (OverviewTreeNode node) {
-        int[] path = getPath(node.getParent());
-        int index = node.getParent().getIndex(node);
-        fireEvent(TreeDataEvent.CONTENTS_CHANGED, path, index, index);
+        int[] path = getPath(node);
+        if (path.length > 0) {
+            int index = path[path.length - 1];
+            fireEvent(TreeDataEvent.CONTENTS_CHANGED, Arrays.copyOf(path, path.length - 1), index, index);
+        }
     }
 
     @Override
     public void sort(Comparator cmprtr, boolean bln) {
         _sorting = cmprtr;
         
-        //Sort node list
-        List<OverviewTreeNode> children = ((OverviewTreeNode)this.getRoot()).getChildren();
-        List<OverviewTreeNode> copy = new ArrayList(children);
-        Collections.sort(copy, cmprtr);
-        children.removeAll(children);
-        children.addAll(copy);
+        //Sort row list
+        List<Row> copy = new ArrayList<>(rows);
+        sortRows(copy);
+        setRows(copy);
         
-        fireEvent(TreeDataEvent.CONTENTS_CHANGED, new int[0], 0, children.size()-1);
+        fireEvent(TreeDataEvent.STRUCTURE_CHANGED, new int[0], 0, 0);
     }
 
     @Override
@@ -293,4 +588,53 @@ public class OverviewTreeModel extends AbstractTreeModel implements Sortable {
         else
             return "natural";
     }
+    
+    /**
+     * Row of the tree: an instance and its replicas that passed the filter.
+     */
+    private static class Row {
+        
+        /**
+         * Instance of the row.
+         */
+        Instance instance;
+        
+        /**
+         * Filtered replicas of the instance, or null if the row is a leaf.
+         */
+        final List<Row> children;
+        
+        Row(Instance instance, List<Row> children) {
+            this.instance = instance;
+            this.children = children;
+        }
+        
+        /**
+         * Checks (or unchecks) the instance and its replicas.
+         * @param checked true or false, depending if the action is checking or unchecking.
+         */
+        void setChecked(boolean checked) {
+            instance.setChecked(checked);
+            if (children != null) {
+                for (Row child : children)
+                    child.setChecked(checked);
+            }
+        }
+        
+        /**
+         * Checks if the instance or any of its replicas are checked.
+         * @return true if any instance in the row is checked.
+         */
+        boolean hasChecked() {
+            if (instance.isChecked())
+                return true;
+            if (children != null) {
+                for (Row child : children) {
+                    if (child.hasChecked())
+                        return true;
+                }
+            }
+            return false;
+        }
+    }
 }
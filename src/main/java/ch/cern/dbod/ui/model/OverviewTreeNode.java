@@ -17,14 +17,14 @@ import org.zkoss.zul.DefaultTreeNode;
  * Represents a node in the tree of instances.
  * @author Daniel Gomez Blanco
  */
-public class OverviewTreeNode extends DefaultTreeNode implements Comparable{
+public class OverviewTreeNode extends DefaultTreeNode<Instance> {
             
     /**
      * Constructor of this class.
      * @param data Data associated with this node.
      * @param children List of children belonging to this node.
      */
-    public OverviewTreeNode(Object data, ArrayList<OverviewTreeNode> children) {
+    public OverviewTreeNode(Instance data, ArrayList<OverviewTreeNode> children) {
         super(data, children);
     }
  
@@ -37,8 +37,17 @@ public class OverviewTreeNode extends DefaultTreeNode implements Comparable{
     }
     
     /**
-     * Overrides the equals method of the object, having into consideration that the node's data might be a Instance
-     * or a String.
+     * Sets the parent of this node without adding it to the children of the
+     * parent. Used by models that build their top level nodes on demand.
+     * @param parent parent node.
+     */
+    void attachTo(OverviewTreeNode parent) {
+        setParent(parent);
+    }
+    
+    /**
+     * Overrides the equals method of the object, comparing the DB names of the
+     * instances of the nodes.
      * @param o Object to compare to.
      * @return true if objects are equal, false otherwise.
      */
@@ -46,20 +55,8 @@ public class OverviewTreeNode extends DefaultTreeNode implements Comparable{
     public boolean equals(Object o) {
         if (o != null && o instanceof OverviewTreeNode) {
             OverviewTreeNode node = (OverviewTreeNode) o;
-            if (this.getData() instanceof String)
-                if (node.getData() instanceof String)
-                    return this.getData().equals(node.getData());
-                else if (node.getData() instanceof Instance)
-                    return this.getData().equals(((Instance)node.getData()).getDbName());
-                else
-                    return false;
-            else if (this.getData() instanceof Instance)
-                if (node.getData() instanceof String)
-                    return ((Instance)this.getData()).getDbName().equals(node.getData());
-                else if (node.getData() instanceof Instance)
-                    return ((Instance)this.getData()).getDbName().equals(((Instance)node.getData()).getDbName());
-                else
-                    return false;
+            if (this.getData() != null && node.getData() != null)
+                return this.getData().getDbName().equals(node.getData().getDbName());
             else
                 return false;
         }
@@ -68,32 +65,15 @@ public class OverviewTreeNode extends DefaultTreeNode implements Comparable{
     }
 
     /**
-     * Overrides the compareTo method of the object, having into consideration that the node's data might be a Instance
-     * or a String.
-     * @param o Object to compare to.
-     * @return -1 if this is less than the object, 0 if they are equal, 1 if this is greater than the object.
+     * Overrides the compareTo method of the object, comparing the DB names of
+     * the instances of the nodes.
+     * @param node node to compare to.
+     * @return -1 if this is less than the node, 0 if they are equal, 1 if this is greater than the node.
      */
     @Override
-    public int compareTo(Object o) {
-        if (o != null &&  o instanceof OverviewTreeNode) {
-            OverviewTreeNode node = (OverviewTreeNode) o;
-            if (this.getData() instanceof String)
-                if (node.getData() instanceof String)
-                    return ((String)this.getData()).compareTo((String)node.getData());
-                else if (node.getData() instanceof Instance)
-                    return ((String)this.getData()).compareTo(((Instance)node.getData()).getDbName());
-                else
-                    return 0;
-            else if (this.getData() instanceof Instance)
-                if (node.getData() instanceof String)
-                    return ((Instance)this.getData()).getDbName().compareTo((String)node.getData());
-                else if (node.getData() instanceof Instance)
-                    return ((Instance)this.getData()).getDbName().compareTo(((Instance)node.getData()).getDbName());
-                else
-                    return 0;
-            else
-                return 0;
-        }
+    public int compareTo(DefaultTreeNode<Instance> node) {
+        if (node != null && this.getData() != null && node.getData() != null)
+            return this.getData().getDbName().compareTo(node.getData().getDbName());
         else
             return 0;
     }
@@ -48,6 +48,7 @@ public class LastJobsRenderer implements RowRenderer {
         row.appendChild(new Label(job.getInstance_name()));
         row.appendChild(new Label(job.getInstance_type()));
         row.appendChild(new Label(Labels.getLabel(CommonConstants.LABEL_JOB + job.getCommandName())));
+        row.appendChild(new Label(job.getRequester()));
         
         row.appendChild(new Label(dateTimeFormatter.format(job.getCreationDate())));
         row.appendChild(new Label(job.getCompletionDate() != null ? dateTimeFormatter.format(job.getCompletionDate()) : "-"));
@@ -20,7 +20,7 @@ import ch.cern.dbod.ui.controller.UpgradeController;
 import ch.cern.dbod.ui.model.OverviewTreeModel;
 import ch.cern.dbod.ui.model.OverviewTreeNode;
 import ch.cern.dbod.util.CommonConstants;
-import ch.cern.dbod.util.EGroupHelper;
+import ch.cern.dbod.util.GroupMembership;
 import ch.cern.dbod.util.JobHelper;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -62,8 +62,7 @@ public class OverviewTreeRenderer implements TreeitemRenderer{
      */
     public OverviewTreeRenderer(boolean checkboxes) {
         Execution execution = Executions.getCurrent();
-        String eGroups = execution.getHeader(CommonConstants.ADFS_GROUP);
-        Boolean adminMode = (Boolean) EGroupHelper.groupInList(ConfigLoader.getProperty(CommonConstants.ADMIN_E_GROUP), eGroups);
+        Boolean adminMode = GroupMembership.get(execution).isAdmin();
         this.instanceDAO = new InstanceDAO();
         this.jobHelper = new JobHelper(adminMode.booleanValue());
         this.checkboxes = checkboxes;
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Helper to run independent calls to external services (DBOD API, web
+ * services) in parallel, so pages wait for the slowest call instead of the
+ * sum of all of them.
+ */
+public class AsyncHelper {
+
+    /**
+     * Default number of threads executing asynchronous calls.
+     */
+    private static final int DEFAULT_THREADS = 20;
+
+    /**
+     * Default time (in seconds) to wait for the result of an asynchronous call.
+     */
+    private static final int DEFAULT_TIMEOUT = 60;
+
+    /**
+     * Executor shared by the whole application.
+     */
+    private static ExecutorService executor;
+
+    /**
+     * Gets the shared executor, creating it on first use.
+     * @return executor for asynchronous calls.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = ConfigLoader.getIntProperty(CommonConstants.ASYNC_THREADS, DEFAULT_THREADS);
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dbod-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Submits a call to be executed in the background.
+     * @param call call to execute.
+     * @return future holding the result of the call.
+     */
+    public static <T> Future<T> submit(Callable<T> call) {
+        return getExecutor().submit(call);
+    }
+
+    /**
+     * Waits for the result of an asynchronous call. Errors are logged and
+     * null is returned, as the synchronous DAO methods do.
+     * @param future future to wait for.
+     * @return the result of the call, or null if it failed or timed out.
+     */
+    public static <T> T get(Future<T> future) {
+        return get(future, getDeadline());
+    }
+
+    /**
+     * Gets the deadline for calls started now, so several calls can share it.
+     * @return time (in milliseconds) when calls started now time out.
+     */
+    public static long getDeadline() {
+        return System.currentTimeMillis() + ConfigLoader.getIntProperty(CommonConstants.ASYNC_TIMEOUT, DEFAULT_TIMEOUT) * 1000L;
+    }
+
+    /**
+     * Waits for the result of an asynchronous call until a deadline shared by
+     * several calls. Errors are logged and null is returned.
+     * @param future future to wait for.
+     * @param deadline time (in milliseconds) to stop waiting at.
+     * @return the result of the call, or null if it failed or timed out.
+     */
+    public static <T> T get(Future<T> future, long deadline) {
+        if (future == null)
+            return null;
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(AsyncHelper.class.getName()).log(Level.SEVERE, "ERROR EXECUTING ASYNCHRONOUS CALL", ex.getCause());
+        } catch (TimeoutException ex) {
+            Logger.getLogger(AsyncHelper.class.getName()).log(Level.SEVERE, "TIMEOUT WAITING FOR ASYNCHRONOUS CALL", ex);
+            future.cancel(true);
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an asynchronous call finished without errors, to tell a call
+     * that returned null from one that failed or timed out.
+     * @param future future of the call, already waited for.
+     * @return true if the call completed normally.
+     */
+    public static boolean isCompleted(Future<?> future) {
+        if (future == null || !future.isDone() || future.isCancelled())
+            return false;
+        try {
+            future.get();
+            return true;
+        } catch (InterruptedException | ExecutionException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops the shared executor. Called when the application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -9,12 +9,14 @@
 
 package ch.cern.dbod.util;
 
-import ch.cern.dbod.ws.authentication.Authentication;
 import ch.cern.dbod.ws.authentication.AuthenticationSoap;
 import ch.cern.dbod.ws.authentication.UserInfo;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.xml.ws.BindingProvider;
 
 /**
  * Helper to obtain information and manage user accounts. It uses the SOAP
@@ -23,6 +25,31 @@ import javax.xml.ws.BindingProvider;
  */
 public class AuthenticationHelper {
 
+    /**
+     * Default time (in seconds) the information of a user is kept in memory.
+     */
+    private static final int DEFAULT_CACHE_TTL = 600;
+
+    /**
+     * Default number of users kept in memory.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
+    /**
+     * Fraction of the time to live after which the information of a user is
+     * refreshed in the background when it is requested.
+     */
+    private static final double REFRESH_AHEAD = 0.8;
+
+    /**
+     * Information of users, by login in lower case, in access order (shared by all sessions).
+     */
+    private static final LinkedHashMap<String, CachedUser> cache = new LinkedHashMap<>(64, 0.75f, true);
+
+    private static long hits;
+    private static long misses;
+    private static long refreshes;
+
     /**
      * Username to connect to web services.
      */
@@ -43,23 +70,164 @@ public class AuthenticationHelper {
     }
 
     /**
-     * Gets the connected user information.
+     * Gets the connected user information. The information is kept in memory
+     * for a while, and refreshed in the background when it is about to expire.
      * @param username user to obtain the information from.
      * @return information from user passed as parameter.
      * @return user information
      */
     public UserInfo getUserInfo(String username) {
         try {
-            Authentication service = new Authentication();
-            AuthenticationSoap port = service.getAuthenticationSoap();
-            ((BindingProvider) port).getRequestContext().put(BindingProvider.USERNAME_PROPERTY, wsUser);
-            ((BindingProvider) port).getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, wsPassword);
-            UserInfo info = port.getUserInfoFromLogin(username);
-            return info;
+            return findUserInfo(username);
+        }
+        catch (Exception ex) {
+            Logger.getLogger(AuthenticationHelper.class.getName()).log(Level.SEVERE, "ERROR OBTAINING USER " + username, ex);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the connected user information (as getUserInfo), throwing the
+     * errors of the service instead of returning null.
+     * @param username user to obtain the information from.
+     * @return user information.
+     */
+    private UserInfo findUserInfo(String username) {
+        if (username == null)
+            return null;
+        final String key = username.toLowerCase();
+        final int ttl = ConfigLoader.getIntProperty(CommonConstants.USER_CACHE_TTL, DEFAULT_CACHE_TTL);
+        if (ttl <= 0)
+            return loadUserInfo(username);
+
+        long now = System.currentTimeMillis();
+        CachedUser cached;
+        boolean refresh = false;
+        synchronized (cache) {
+            cached = cache.get(key);
+            if (cached != null && now - cached.loaded < ttl * 1000L) {
+                hits++;
+                if (!cached.refreshing && now - cached.loaded > ttl * 1000L * REFRESH_AHEAD) {
+                    cached.refreshing = true;
+                    refreshes++;
+                    refresh = true;
+                }
+            }
+            else {
+                misses++;
+                cached = null;
+            }
+        }
+
+        if (cached != null) {
+            if (refresh) {
+                final String login = username;
+                AsyncHelper.submit(new Callable<UserInfo>() {
+                    @Override
+                    public UserInfo call() {
+                        UserInfo info = fetchUserInfo(login);
+                        if (info != null) {
+                            store(key, info);
+                        }
+                        else {
+                            synchronized (cache) {
+                                CachedUser current = cache.get(key);
+                                if (current != null)
+                                    current.refreshing = false;
+                            }
+                        }
+                        return info;
+                    }
+                });
+            }
+            return cached.info;
+        }
+
+        UserInfo info = loadUserInfo(username);
+        if (info != null)
+            store(key, info);
+        return info;
+    }
+
+    /**
+     * Gets the information of a user in the background.
+     * @param username user to obtain the information from.
+     * @return future holding the user information, or failing if the
+     * service could not be queried.
+     */
+    public Future<UserInfo> getUserInfoAsync(final String username) {
+        return AsyncHelper.submit(new Callable<UserInfo>() {
+            @Override
+            public UserInfo call() {
+                return findUserInfo(username);
+            }
+        });
+    }
+
+    /**
+     * Gets the information of a user from the authentication service.
+     * @param username user to obtain the information from.
+     * @return user information, or null in case of error.
+     */
+    private UserInfo fetchUserInfo(String username) {
+        try {
+            return loadUserInfo(username);
         }
         catch (Exception ex) {
             Logger.getLogger(AuthenticationHelper.class.getName()).log(Level.SEVERE, "ERROR OBTAINING USER " + username, ex);
         }
         return null;
     }
+
+    private UserInfo loadUserInfo(String username) {
+        AuthenticationSoap port = WebServiceHelper.getAuthenticationPort(wsUser, wsPassword);
+        return port.getUserInfoFromLogin(username);
+    }
+
+    private static void store(String key, UserInfo info) {
+        int size = ConfigLoader.getIntProperty(CommonConstants.USER_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+        synchronized (cache) {
+            cache.put(key, new CachedUser(info, System.currentTimeMillis()));
+            //Remove the least recently used users
+            for (Iterator<CachedUser> it = cache.values().iterator(); cache.size() > size && it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the users kept in memory.
+     */
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Gets a summary of the statistics of the users kept in memory, to be logged.
+     * @return summary of the statistics.
+     */
+    public static String getCacheStatistics() {
+        synchronized (cache) {
+            long total = hits + misses;
+            return "ENTRIES: " + cache.size() + ", HITS: " + hits + ", MISSES: " + misses
+                    + ", HIT RATE: " + String.format("%.2f", total > 0 ? (double) hits / total : 0) + ", REFRESHES: " + refreshes;
+        }
+    }
+
+    /**
+     * Information of a user kept in memory.
+     */
+    private static class CachedUser {
+        final UserInfo info;
+        final long loaded;
+        boolean refreshing;
+
+        CachedUser(UserInfo info, long loaded) {
+            this.info = info;
+            this.loaded = loaded;
+        }
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.util;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-lived cache of the accesses granted by the instance filter, so users
+ * navigating the pages of an instance do not wait for the instance to be
+ * fetched before the page starts loading. The page checks the access again
+ * with the instance it loads. Only granted accesses are kept, by login, groups
+ * of the user (a digest of the group header) and DB name.
+ */
+public class AuthorizationCache {
+
+    /**
+     * Default time (in seconds) decisions are kept.
+     */
+    private static final int DEFAULT_TTL = 60;
+
+    /**
+     * Number of decisions kept before removing the expired ones.
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    /**
+     * Decisions, by key.
+     */
+    private static final ConcurrentHashMap<String, Decision> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if a user was recently allowed to access an instance.
+     * @param login login of the user.
+     * @param groups group header of the request.
+     * @param dbName DB name of the instance.
+     * @return true if the access was granted and has not expired.
+     */
+    public static boolean isAllowed(String login, String groups, String dbName) {
+        Decision decision = decisions.get(getKey(login, groups, dbName));
+        return decision != null && decision.expiry >= System.currentTimeMillis();
+    }
+
+    /**
+     * Stores that a user is allowed to access an instance.
+     * @param login login of the user.
+     * @param groups group header of the request.
+     * @param dbName DB name of the instance.
+     */
+    public static void put(String login, String groups, String dbName) {
+        int ttl = ConfigLoader.getIntProperty(CommonConstants.AUTHORIZATION_CACHE_TTL, DEFAULT_TTL);
+        if (ttl <= 0)
+            return;
+        long now = System.currentTimeMillis();
+        if (decisions.size() >= MAX_ENTRIES) {
+            for (Iterator<Decision> it = decisions.values().iterator(); it.hasNext();) {
+                if (it.next().expiry < now)
+                    it.remove();
+            }
+            if (decisions.size() >= MAX_ENTRIES)
+                decisions.clear();
+        }
+        decisions.put(getKey(login, groups, dbName), new Decision(dbName, now + ttl * 1000L));
+    }
+
+    /**
+     * Removes the decisions about an instance, when its owner or e-group change
+     * or it is deleted.
+     * @param dbName DB name of the instance.
+     */
+    public static void invalidate(String dbName) {
+        for (Iterator<Decision> it = decisions.values().iterator(); it.hasNext();) {
+            if (it.next().dbName.equals(dbName))
+                it.remove();
+        }
+    }
+
+    /**
+     * Removes all the decisions.
+     */
+    public static void clear() {
+        decisions.clear();
+    }
+
+    private static String getKey(String login, String groups, String dbName) {
+        String digest;
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            digest = new BigInteger(1, sha.digest((groups != null ? groups : "").getBytes(StandardCharsets.UTF_8))).toString(16);
+        } catch (NoSuchAlgorithmException ex) {
+            digest = groups;
+        }
+        return login + "\n" + digest + "\n" + dbName;
+    }
+
+    /**
+     * Access granted to a user to an instance.
+     */
+    private static class Decision {
+        final String dbName;
+        final long expiry;
+
+        Decision(String dbName, long expiry) {
+            this.dbName = dbName;
+            this.expiry = expiry;
+        }
+    }
+}
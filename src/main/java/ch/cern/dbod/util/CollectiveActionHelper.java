@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.util;
+
+import ch.cern.dbod.db.entity.Instance;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.zkoss.zk.ui.Desktop;
+import org.zkoss.zk.ui.DesktopUnavailableException;
+import org.zkoss.zk.ui.Executions;
+import org.zkoss.zk.ui.UiException;
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
+
+/**
+ * Executes collective actions (startup, shutdown, backup...) on several
+ * instances in parallel. The number of actions running at the same time is
+ * bounded globally and per host (across all the collective actions running),
+ * and progress is pushed to the page as each instance finishes.
+ */
+public class CollectiveActionHelper {
+
+    /**
+     * Name of the event sent when an instance finishes. Its data is a {@link Result}.
+     */
+    public static final String ON_PROGRESS = "onCollectiveProgress";
+
+    /**
+     * Name of the event sent when all instances finish. Its data is a {@link Summary}.
+     */
+    public static final String ON_FINISH = "onCollectiveFinish";
+
+    /**
+     * Default number of actions executed at the same time.
+     */
+    private static final int DEFAULT_THREADS = 10;
+
+    /**
+     * Default number of actions executed at the same time on the same host.
+     */
+    private static final int DEFAULT_HOST_LIMIT = 2;
+
+    /**
+     * Executor shared by all collective actions.
+     */
+    private static ExecutorService executor;
+
+    /**
+     * Number of actions running on each host, for all the collective actions.
+     */
+    private static final Map<String, Integer> runningByHost = new HashMap<>();
+
+    /**
+     * Actions waiting for the limit of their host, for all the collective actions.
+     */
+    private static final Map<String, Deque<Task>> waitingByHost = new HashMap<>();
+
+    /**
+     * Action to execute on each instance.
+     */
+    public interface Action {
+        /**
+         * Executes the action on an instance. It is executed in the background
+         * on a copy of the instance, as the page may be rendering the original.
+         * @param instance copy of the instance to execute the action on.
+         * @return true if the action was executed successfully, false otherwise.
+         */
+        boolean execute(Instance instance);
+    }
+
+    /**
+     * Action executed on all the instances at once (in a single transaction).
+     */
+    public interface BatchAction {
+        /**
+         * Executes the action on the instances. It is executed in the
+         * background on copies of the instances, as the page may be rendering
+         * the originals.
+         * @param instances copies of the instances to execute the action on.
+         * @return instances where the action failed.
+         */
+        List<Instance> execute(List<Instance> instances);
+    }
+
+    /**
+     * Gets the shared executor, creating it on first use.
+     * @return executor for collective actions.
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = ConfigLoader.getIntProperty(CommonConstants.COLLECTIVE_THREADS, DEFAULT_THREADS);
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dbod-collective-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Executes an action on a list of instances. If server push can be used on
+     * the desktop, this method returns immediately and the events are pushed
+     * to the listener as instances finish. Otherwise it waits for all the
+     * instances and then sends the events to the listener. Changes made by the
+     * action are not applied to the instances: the listener can apply the state
+     * of each result ({@link Result#getState()}) when it receives it.
+     * @param desktop desktop of the page executing the action.
+     * @param instances instances to execute the action on.
+     * @param action action to execute.
+     * @param listener listener receiving {@link #ON_PROGRESS} and {@link #ON_FINISH} events.
+     */
+    public static void run(final Desktop desktop, List<Instance> instances, final Action action, final EventListener<Event> listener) {
+        final boolean push = enablePush(desktop);
+        final int total = instances.size();
+        final List<Result> results = Collections.synchronizedList(new ArrayList<Result>());
+        final CountDownLatch finished = new CountDownLatch(total);
+
+        if (total == 0) {
+            sendEvent(desktop, push, listener, new Event(ON_FINISH, null, new Summary(results)));
+            return;
+        }
+
+        for (final Instance instance : instances) {
+            //Copy the instance in this thread, the action runs in the background
+            final Instance copy = instance.clone();
+            dispatch(getHost(instance), new Task() {
+                @Override
+                public void run() {
+                    boolean success = false;
+                    try {
+                        success = action.execute(copy);
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger(CollectiveActionHelper.class.getName()).log(Level.SEVERE, "ERROR EXECUTING COLLECTIVE ACTION ON INSTANCE " + instance.getDbName(), ex);
+                    }
+                    report(success);
+                }
+
+                @Override
+                void abort() {
+                    report(false);
+                }
+
+                private void report(boolean success) {
+                    //Record and push results in order, so the summary is always the last event
+                    synchronized (results) {
+                        Result result = new Result(instance, copy.getState(), success, results.size() + 1, total);
+                        results.add(result);
+                        if (push) {
+                            sendEvent(desktop, true, listener, new Event(ON_PROGRESS, null, result));
+                            if (result.getDone() == total)
+                                sendEvent(desktop, true, listener, new Event(ON_FINISH, null, new Summary(results)));
+                        }
+                    }
+                    finished.countDown();
+                }
+            });
+        }
+
+        if (!push) {
+            //Wait for all the instances and send the events from this thread
+            try {
+                finished.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (results) {
+                for (Result result : results)
+                    sendEvent(desktop, false, listener, new Event(ON_PROGRESS, null, result));
+            }
+            sendEvent(desktop, false, listener, new Event(ON_FINISH, null, new Summary(results)));
+        }
+    }
+
+    /**
+     * Executes an action on all the instances at once, in the background if
+     * server push can be used on the desktop. When the action finishes, the
+     * same events as in {@link #run} are sent to the listener (a progress
+     * event per instance and the summary).
+     * @param desktop desktop of the page executing the action.
+     * @param instances instances to execute the action on.
+     * @param action action to execute.
+     * @param listener listener receiving {@link #ON_PROGRESS} and {@link #ON_FINISH} events.
+     */
+    public static void runBatch(final Desktop desktop, final List<Instance> instances, final BatchAction action, final EventListener<Event> listener) {
+        final boolean push = enablePush(desktop);
+        //Copy the instances in this thread, the action runs in the background
+        final List<Instance> copies = new ArrayList<>(instances.size());
+        for (Instance instance : instances)
+            copies.add(instance.clone());
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                List<Instance> failed = new ArrayList<>(copies);
+                try {
+                    failed = action.execute(copies);
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(CollectiveActionHelper.class.getName()).log(Level.SEVERE, "ERROR EXECUTING COLLECTIVE ACTION ON " + copies.size() + " INSTANCES", ex);
+                }
+                Set<Instance> failedCopies = Collections.newSetFromMap(new IdentityHashMap<Instance, Boolean>());
+                failedCopies.addAll(failed);
+                List<Result> results = new ArrayList<>(copies.size());
+                for (int i = 0; i < copies.size(); i++) {
+                    Result result = new Result(instances.get(i), copies.get(i).getState(), !failedCopies.contains(copies.get(i)), i + 1, copies.size());
+                    results.add(result);
+                    sendEvent(desktop, push, listener, new Event(ON_PROGRESS, null, result));
+                }
+                sendEvent(desktop, push, listener, new Event(ON_FINISH, null, new Summary(results)));
+            }
+        };
+        if (!push) {
+            task.run();
+            return;
+        }
+        try {
+            getExecutor().execute(task);
+        } catch (RejectedExecutionException ex) {
+            //The application is being undeployed
+            Logger.getLogger(CollectiveActionHelper.class.getName()).log(Level.WARNING, "COLLECTIVE ACTION REJECTED ON " + copies.size() + " INSTANCES", ex);
+            task.run();
+        }
+    }
+
+    /**
+     * Executes an action on a host as soon as the limit of the host allows it.
+     * Actions over the limit wait in a queue (not in a thread of the executor)
+     * until an action on the same host finishes.
+     * @param host host of the instance.
+     * @param task action on the instance.
+     */
+    private static void dispatch(String host, Task task) {
+        int hostLimit = Math.max(ConfigLoader.getIntProperty(CommonConstants.COLLECTIVE_HOST_LIMIT, DEFAULT_HOST_LIMIT), 1);
+        synchronized (runningByHost) {
+            Integer running = runningByHost.get(host);
+            if (running == null)
+                running = 0;
+            if (running >= hostLimit) {
+                Deque<Task> waiting = waitingByHost.get(host);
+                if (waiting == null) {
+                    waiting = new ArrayDeque<>();
+                    waitingByHost.put(host, waiting);
+                }
+                waiting.add(task);
+                return;
+            }
+            runningByHost.put(host, running + 1);
+        }
+        execute(host, task);
+    }
+
+    /**
+     * Executes an action on a host that has already been counted as running,
+     * and starts the next action waiting for the host when it finishes.
+     * @param host host of the instance.
+     * @param task action on the instance.
+     */
+    private static void execute(final String host, final Task task) {
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        next(host);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            //The application is being undeployed
+            Logger.getLogger(CollectiveActionHelper.class.getName()).log(Level.WARNING, "COLLECTIVE ACTION REJECTED ON HOST " + host, ex);
+            task.abort();
+            next(host);
+        }
+    }
+
+    /**
+     * Starts the next action waiting for a host, or releases its slot.
+     * @param host host where an action has just finished.
+     */
+    private static void next(String host) {
+        Task task;
+        synchronized (runningByHost) {
+            Deque<Task> waiting = waitingByHost.get(host);
+            task = waiting != null ? waiting.poll() : null;
+            if (waiting != null && waiting.isEmpty())
+                waitingByHost.remove(host);
+            if (task == null) {
+                Integer running = runningByHost.get(host);
+                if (running == null || running <= 1)
+                    runningByHost.remove(host);
+                else
+                    runningByHost.put(host, running - 1);
+                return;
+            }
+        }
+        execute(host, task);
+    }
+
+    /**
+     * Enables server push on a desktop if possible.
+     * @param desktop desktop to enable server push on.
+     * @return true if server push is enabled.
+     */
+    private static boolean enablePush(Desktop desktop) {
+        try {
+            if (!desktop.isServerPushEnabled())
+                desktop.enableServerPush(true);
+            return true;
+        } catch (UiException ex) {
+            Logger.getLogger(CollectiveActionHelper.class.getName()).log(Level.WARNING, "COULD NOT ENABLE SERVER PUSH FOR COLLECTIVE ACTION", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Sends an event to the listener, through server push or directly.
+     * @param desktop desktop of the page.
+     * @param push true to send the event through server push.
+     * @param listener listener to send the event to.
+     * @param event event to send.
+     */
+    private static void sendEvent(Desktop desktop, boolean push, EventListener<Event> listener, Event event) {
+        try {
+            if (push)
+                Executions.schedule(desktop, listener, event);
+            else
+                listener.onEvent(event);
+        } catch (DesktopUnavailableException ex) {
+            //The page was closed, the actions are executed anyway
+        } catch (Exception ex) {
+            Logger.getLogger(CollectiveActionHelper.class.getName()).log(Level.SEVERE, "ERROR NOTIFYING PROGRESS OF COLLECTIVE ACTION", ex);
+        }
+    }
+
+    private static String getHost(Instance instance) {
+        return instance.getHost() != null ? instance.getHost() : "";
+    }
+
+    /**
+     * Stops the shared executor. Called when the application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        List<Task> waiting = new ArrayList<>();
+        synchronized (runningByHost) {
+            for (Deque<Task> queue : waitingByHost.values())
+                waiting.addAll(queue);
+            runningByHost.clear();
+            waitingByHost.clear();
+        }
+        for (Task task : waiting)
+            task.abort();
+    }
+
+    /**
+     * Action on an instance, which can be aborted (reported as failed) if it
+     * cannot be executed.
+     */
+    private abstract static class Task implements Runnable {
+        abstract void abort();
+    }
+
+    /**
+     * Result of the action on an instance.
+     */
+    public static class Result {
+        private final Instance instance;
+        private final String state;
+        private final boolean success;
+        private final int done;
+        private final int total;
+
+        Result(Instance instance, String state, boolean success, int done, int total) {
+            this.instance = instance;
+            this.state = state;
+            this.success = success;
+            this.done = done;
+            this.total = total;
+        }
+
+        public Instance getInstance() {
+            return instance;
+        }
+
+        /**
+         * Gets the state of the instance after the action, to be applied to
+         * the instance in the thread of the page.
+         * @return state of the instance after the action.
+         */
+        public String getState() {
+            return state;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /**
+         * Gets the number of instances finished, including this one.
+         * @return number of instances finished.
+         */
+        public int getDone() {
+            return done;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * Results of the action on all the instances.
+     */
+    public static class Summary {
+        private final List<Instance> succeeded = new ArrayList<>();
+        private final List<Instance> failed = new ArrayList<>();
+
+        Summary(List<Result> results) {
+            synchronized (results) {
+                for (Result result : results) {
+                    if (result.isSuccess())
+                        succeeded.add(result.getInstance());
+                    else
+                        failed.add(result.getInstance());
+                }
+            }
+        }
+
+        public List<Instance> getSucceeded() {
+            return succeeded;
+        }
+
+        public List<Instance> getFailed() {
+            return failed;
+        }
+    }
+}
@@ -37,16 +37,42 @@ public class CommonConstants {
     public static final String ATTRIBUTE_USER_FILTER_PROJECT = "userFilterProject";
     public static final String ATTRIBUTE_USER_FILTER_DB_TYPE = "userFilterDbType";
     public static final String ATTRIBUTE_USER_FILTER_ACTIONS = "userFilterActions";
+    public static final String ATTRIBUTE_REQUEST_INSTANCE = "requestInstance";
+    public static final String ATTRIBUTE_REQUEST_UPGRADES = "requestUpgrades";
+    public static final String ATTRIBUTE_REQUEST_ADMIN = "requestAdmin";
+    public static final String ATTRIBUTE_REQUEST_GROUPS = "requestGroups";
     
     //Config
     public static final String ADMIN_E_GROUP = "admin_egroup";
     public static final String CONFIG_LOCATION = "configLocation";
     public static final String WS_USER = "service_account";
     public static final String WS_PSWD = "service_password";
+    public static final String WS_DBOD_ENDPOINT = "ws_dbod_endpoint";
+    public static final String WS_AUTHENTICATION_ENDPOINT = "ws_authentication_endpoint";
+    public static final String WS_EGROUPS_ENDPOINT = "ws_egroups_endpoint";
     public static final String ANNOUNCEMENT_LOCATION = "announcement_location";
     public static final String DBOD_API_LOCATION = "dbodapi_path";
     public static final String DBOD_API_USER = "dbodapi_user";
     public static final String DBOD_API_PASS = "dbodapi_pass";
+    public static final String DBOD_API_MAX_CONNECTIONS = "dbodapi_max_connections";
+    public static final String DBOD_API_MAX_CONNECTIONS_PER_ROUTE = "dbodapi_max_connections_per_route";
+    public static final String DBOD_API_IDLE_TIMEOUT = "dbodapi_idle_timeout";
+    public static final String DBOD_API_KEEP_ALIVE = "dbodapi_keep_alive";
+    public static final String DBOD_API_CACHE_SIZE = "dbodapi_cache_size";
+    public static final String ASYNC_THREADS = "async_threads";
+    public static final String ASYNC_TIMEOUT = "async_timeout";
+    public static final String UPGRADES_CACHE_TTL = "upgrades_cache_ttl";
+    public static final String OVERVIEW_INDEX_THRESHOLD = "overview_index_threshold";
+    public static final String STATE_POLL_INTERVAL = "state_poll_interval";
+    public static final String COLLECTIVE_THREADS = "collective_threads";
+    public static final String COLLECTIVE_HOST_LIMIT = "collective_host_limit";
+    public static final String JOB_CACHE_SIZE = "job_cache_size";
+    public static final String JOB_CACHE_COMPRESS = "job_cache_compress";
+    public static final String AUTHORIZATION_CACHE_TTL = "authorization_cache_ttl";
+    public static final String EGROUPS_CACHE_TTL = "egroups_cache_ttl";
+    public static final String EGROUPS_NEGATIVE_CACHE_TTL = "egroups_negative_cache_ttl";
+    public static final String USER_CACHE_TTL = "user_cache_ttl";
+    public static final String USER_CACHE_SIZE = "user_cache_size";
     public static final String APPDYN_AUTH_STRING = "appdyn_auth";
     public static final String APPDYN_HOST = "appdyn_host";
     public static final String APPDYN_DBTUNA = "appdyn_dbtuna_path";
@@ -234,6 +260,8 @@ public class CommonConstants {
     public static final String LABEL_PORTABLE = "portable";
     public static final String LABEL_NOTIFICATIONS_ENABLED = "unsetNotifications";
     public static final String LABEL_NOTIFICATIONS_DISABLED = "setNotifications";
+    public static final String LABEL_COLLECTIVE_PROGRESS = "collectiveProgress";
+    public static final String LABEL_COLLECTIVE_SUMMARY = "collectiveSummary";
     public static final String ERROR_NOTIFICATIONS_UNSET = "noNotifications";
 
     //Errors
@@ -271,6 +299,7 @@ public class CommonConstants {
     public static final String ERROR_CONFIG_TYPE = "errorConfigType";
     public static final String ERROR_UPDATING_INSTANCE = "errorUpdatingInstance";
     public static final String ERROR_COLLECTIVE_ACTION = "errorCollectiveAction";
+    public static final String ERROR_COLLECTIVE_ACTION_INSTANCES = "errorCollectiveActionInstances";
     public static final String ERROR_DISABLING_AUTO_BACKUPS = "errorDisablingAutoBackups";
     public static final String ERROR_NO_SNAPSHOT = "errorNoSnapshot";
     public static final String ERROR_SNAPSHOT_PAST = "errorSnapshotPast";
@@ -299,6 +328,7 @@ public class CommonConstants {
     public static final String ERROR_PORT_EMPTY = "errorPortEmpty";
     public static final String ERROR_PORT_INVALID = "errorPortInvalid";
     public static final String ERROR_MASTER_DOES_NOT_EXIST = "errorMasterDoesNotExist";
+    public static final String ERROR_MASTER_SEARCH = "errorMasterSearch";
     public static final String ERROR_PIT_ONE_MINUTE = "errorPITOneMinute";
     public static final String ERROR_DESTROYING_INSTANCE = "errorDestroyingInstance";
     public static final String ERROR_RESCUING_INSTANCE = "errorRescuingInstance";
@@ -9,6 +9,8 @@
 
 package ch.cern.dbod.util;
 
+import ch.cern.dbod.db.dao.ConnectionProvider;
+import ch.cern.dbod.db.dao.JobCache;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,6 +38,25 @@ public class ConfigLoader implements ServletContextListener {
         return properties.getProperty(name);
     }
     
+    /**
+     * Gets a numeric property, falling back to a default value if it is not
+     * defined or cannot be parsed.
+     * @param name name of the property.
+     * @param defaultValue value to return if the property is not valid.
+     * @return the value of the property or the default value.
+     */
+    public static int getIntProperty(String name, int defaultValue) {
+        String value = properties != null ? properties.getProperty(name) : null;
+        if (value == null || value.trim().isEmpty())
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            Logger.getLogger(ConfigLoader.class.getName()).log(Level.WARNING, "INVALID VALUE FOR PROPERTY " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+    
     public static void reload(ServletContext sc) {
         properties = new Properties();
         String configPath = sc.getInitParameter(CommonConstants.CONFIG_LOCATION);
@@ -48,6 +69,17 @@ public class ConfigLoader implements ServletContextListener {
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-        // Nothing to do
+        StateMonitor.shutdown();
+        CollectiveActionHelper.shutdown();
+        AsyncHelper.shutdown();
+        RestHelper.shutdown();
+        WebServiceHelper.reset();
+        Logger.getLogger(ConfigLoader.class.getName()).log(Level.INFO, "DATABASE CONNECTIONS: {0}", ConnectionProvider.getStatistics());
+        ConnectionProvider.setDataSource(null);
+        Logger.getLogger(ConfigLoader.class.getName()).log(Level.INFO, "JOB CACHE: {0}", JobCache.getStatistics());
+        JobCache.clear();
+        AuthorizationCache.clear();
+        Logger.getLogger(ConfigLoader.class.getName()).log(Level.INFO, "USER CACHE: {0}", AuthenticationHelper.getCacheStatistics());
+        AuthenticationHelper.clearCache();
     }
 }
@@ -11,11 +11,13 @@ package ch.cern.dbod.util;
 
 import ch.cern.dbod.ws.authentication.UserInfo;
 import ch.cern.dbod.ws.egroups.*;
+import java.util.Iterator;
 import java.util.ListIterator;
-import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.xml.ws.BindingProvider;
 
 /**
  * Helper to manage e-groups. It also provides a static method to check if a
@@ -28,6 +30,26 @@ import javax.xml.ws.BindingProvider;
  */
 public class EGroupHelper {
 
+    /**
+     * Default time (in seconds) e-groups found are kept in memory.
+     */
+    private static final int DEFAULT_CACHE_TTL = 300;
+
+    /**
+     * Default time (in seconds) e-groups not found are remembered.
+     */
+    private static final int DEFAULT_NEGATIVE_CACHE_TTL = 30;
+
+    /**
+     * Number of e-groups kept before removing the expired ones.
+     */
+    private static final int MAX_CACHE_ENTRIES = 1000;
+
+    /**
+     * Lookups of e-groups (including the ones that do not exist), by name in lower case.
+     */
+    private static final ConcurrentHashMap<String, CachedEgroup> cache = new ConcurrentHashMap<>();
+
     /**
      * Username to connect to web services.
      */
@@ -51,34 +73,8 @@ public class EGroupHelper {
         this.wsUser = user;
         this.wsPassword = password;
         
-        // Service locator
-        EgroupsWebService webService = new EgroupsWebService();
-        // Service stub
-        this.port = webService.getEgroupsServiceSoap11();
-        //Set username and password
-        BindingProvider bp = (BindingProvider) port;
-        bp.getRequestContext().put(BindingProvider.USERNAME_PROPERTY, wsUser);
-        bp.getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, wsPassword);
-    }
-
-    /**
-     * Checks if a group is in a list of groups.
-     *
-     * @param group group to check
-     * @param groups groups to check, separated by ";"
-     * @return true if the group is in the list, false otherwise
-     */
-    public static boolean groupInList(String group, String groups) {
-        if (group != null && groups != null) {
-            StringTokenizer tokenizer = new StringTokenizer(groups, ";");
-            while (tokenizer.hasMoreTokens()) {
-                String token = tokenizer.nextToken();
-                if (token.equalsIgnoreCase(group)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        //Service stub (shared, already configured with username and password)
+        this.port = WebServiceHelper.getEgroupsPort(wsUser, wsPassword);
     }
 
     /**
@@ -123,6 +119,7 @@ public class EGroupHelper {
             req.setEgroup(egroup);
             //Get result
             SynchronizeEgroupResponse resp = port.synchronizeEgroup(req);
+            invalidate(eGroupName);
             
             //Check errors
             if (resp.getError() != null) {
@@ -158,6 +155,7 @@ public class EGroupHelper {
             req.setEgroupName(egroup);
             //Get result
             DeleteEgroupResponse resp = port.deleteEgroup(req);
+            invalidate(egroup);
             
             //Check errors
             if (resp.getError() != null) {
@@ -182,46 +180,121 @@ public class EGroupHelper {
         return findEgroup(egroup) != null;
     }
     
+    /**
+     * Checks if an e-group exists asking the service, not the lookups kept in
+     * memory. To be used before creating an e-group, as creating an e-group
+     * that has just been created elsewhere would overwrite it.
+     * @param egroup name of the egroup
+     * @return true if exists, false if it does not, or null if the service
+     * could not be queried
+     */
+    public Boolean eGroupExistsUncached (String egroup) {
+        try {
+            return lookupEgroup(egroup, false) != null;
+        } catch (Exception ex) {
+            Logger.getLogger(EGroupHelper.class.getName()).log(Level.SEVERE, "ERROR OBTAINING EGROUP " + egroup, ex);
+        }
+        return null;
+    }
+    
     /**
      * Checks if an e-group has the usage code EGROUPS_ONLY
      * @param egroup name of the egroup
      * @return true if the egroup is EGROUPS_ONLY, false otherwise
      */
     public boolean isEgroupsOnly (String egroup) {
-        EgroupType e = findEgroup(egroup);
-        return e != null && UsageCode.EGROUPS_ONLY.equals(e.getUsage());
+        return isEgroupsOnly(findEgroup(egroup));
+    }
+    
+    /**
+     * Checks if an e-group already found has the usage code EGROUPS_ONLY
+     * @param egroup the egroup, or null if it does not exist
+     * @return true if the egroup is EGROUPS_ONLY, false otherwise
+     */
+    public static boolean isEgroupsOnly (EgroupType egroup) {
+        return egroup != null && UsageCode.EGROUPS_ONLY.equals(egroup.getUsage());
+    }
+    
+    /**
+     * Finds an e-group by name in the background.
+     * @param egroup name of the egroup
+     * @return future holding the group object (null if it does not exist), or
+     * failing if the service could not be queried
+     */
+    public Future<EgroupType> findEgroupAsync (final String egroup) {
+        return AsyncHelper.submit(new Callable<EgroupType>() {
+            @Override
+            public EgroupType call() {
+                return lookupEgroup(egroup, true);
+            }
+        });
     }
         
   
     /**
-     * Finds an e-group by name.
+     * Finds an e-group by name. Lookups are kept in memory for a while, so
+     * validating a form does not query the service several times.
      *
      * @param egroup name of the e-group to check.
      * @return the group object.
      */
     private EgroupType findEgroup(String egroup) {
-        try {                        
-            // get e-group by name
-            FindEgroupByNameRequest req = new FindEgroupByNameRequest();
-            req.setName(egroup);
-            FindEgroupByNameResponse resp = port.findEgroupByName(req);
-            EgroupType group = (EgroupType) resp.getResult();
-            
-            //Check warnings (we do not check errors because if the group does not exist an error is returned)
-            if (resp.getWarnings() != null && resp.getWarnings().size() > 0) {
-                ListIterator<ErrorType> iter = resp.getWarnings().listIterator();
-                while (iter.hasNext()) {
-                    Logger.getLogger(EGroupHelper.class.getName()).log(Level.WARNING, "WARNING FINDING EGROUP {0}: {1}", new Object[]{egroup, iter.next().getMessage()});
-                }
-            }
-            
-            return group;
+        try {
+            return lookupEgroup(egroup, true);
         } catch (Exception ex) {
             Logger.getLogger(EGroupHelper.class.getName()).log(Level.SEVERE, "ERROR OBTAINING EGROUP " + egroup, ex);
         }
         return null;
     }
     
+    /**
+     * Finds an e-group by name (as findEgroup), throwing the errors of the
+     * service instead of returning null.
+     *
+     * @param egroup name of the e-group to check.
+     * @param useCache false to ask the service even if the e-group was looked up recently.
+     * @return the group object, or null if it does not exist.
+     */
+    private EgroupType lookupEgroup(String egroup, boolean useCache) {
+        if (egroup == null)
+            return null;
+        String key = egroup.toLowerCase();
+        long now = System.currentTimeMillis();
+        CachedEgroup cached = cache.get(key);
+        if (useCache && cached != null && cached.expiry > now)
+            return cached.group;
+
+        // get e-group by name
+        FindEgroupByNameRequest req = new FindEgroupByNameRequest();
+        req.setName(egroup);
+        FindEgroupByNameResponse resp = port.findEgroupByName(req);
+        EgroupType group = (EgroupType) resp.getResult();
+
+        //Check warnings (we do not check errors because if the group does not exist an error is returned)
+        if (resp.getWarnings() != null && resp.getWarnings().size() > 0) {
+            ListIterator<ErrorType> iter = resp.getWarnings().listIterator();
+            while (iter.hasNext()) {
+                Logger.getLogger(EGroupHelper.class.getName()).log(Level.WARNING, "WARNING FINDING EGROUP {0}: {1}", new Object[]{egroup, iter.next().getMessage()});
+            }
+        }
+
+        //Remember the result (e-groups not found for less time, they may be created soon)
+        int ttl = group != null ? ConfigLoader.getIntProperty(CommonConstants.EGROUPS_CACHE_TTL, DEFAULT_CACHE_TTL)
+                : ConfigLoader.getIntProperty(CommonConstants.EGROUPS_NEGATIVE_CACHE_TTL, DEFAULT_NEGATIVE_CACHE_TTL);
+        if (ttl > 0) {
+            if (cache.size() >= MAX_CACHE_ENTRIES) {
+                for (Iterator<CachedEgroup> it = cache.values().iterator(); it.hasNext();) {
+                    if (it.next().expiry <= now)
+                        it.remove();
+                }
+                if (cache.size() >= MAX_CACHE_ENTRIES)
+                    cache.clear();
+            }
+            cache.put(key, new CachedEgroup(group, now + ttl * 1000L));
+        }
+        return group;
+    }
+    
     /**
      * Adds an e-group as member of another e-group
      * @param ownerEgroup e-group to add the other e-group to
@@ -245,6 +318,7 @@ public class EGroupHelper {
                 req.setOverwriteMembers(false);
                 //Get result
                 AddEgroupMembersResponse resp = port.addEgroupMembers(req);
+                invalidate(ownerEgroup);
 
                 //Check errors
                 if (resp.getError() != null) {
@@ -293,6 +367,7 @@ public class EGroupHelper {
                 req.getMembers().add(m);
                 //Get result
                 RemoveEgroupMembersResponse resp = port.removeEgroupMembers(req);
+                invalidate(ownerEgroup);
 
                 //Check errors
                 if (resp.getError() != null) {
@@ -367,4 +442,26 @@ public class EGroupHelper {
         return removeEgroupAsMember(CommonConstants.OEM_PDB_EGROUP_PREFIX + instanceName, oldEgroup)
                 && addEgroupAsMember(CommonConstants.OEM_PDB_EGROUP_PREFIX + instanceName, newEgroup);
     }
+
+    /**
+     * Removes an e-group from the lookups kept in memory, when it is modified.
+     * @param egroup name of the e-group.
+     */
+    private static void invalidate(String egroup) {
+        if (egroup != null)
+            cache.remove(egroup.toLowerCase());
+    }
+
+    /**
+     * Result of looking up an e-group.
+     */
+    private static class CachedEgroup {
+        final EgroupType group;
+        final long expiry;
+
+        CachedEgroup(EgroupType group, long expiry) {
+            this.group = group;
+            this.expiry = expiry;
+        }
+    }
 }
@@ -10,7 +10,6 @@
 package ch.cern.dbod.util;
 
 import ch.cern.dbod.db.entity.Instance;
-import ch.cern.dbod.ws.DBODWebService;
 import ch.cern.dbod.ws.DBODWebServicePortType;
 import java.io.FileNotFoundException;
 import java.net.MalformedURLException;
@@ -55,8 +54,7 @@ public class FileHelper {
     public AMedia getMySQLConfigFile(Instance instance) {
         AMedia file = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             String content = port.getMySQLConfigFile(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName());
             if (content != null) {
                 file = new AMedia(Labels.getLabel(CommonConstants.LABEL_CONFIG + CommonConstants.CONFIG_FILE_MY_CNF), null, "text/plain", content);
@@ -76,8 +74,7 @@ public class FileHelper {
     public AMedia getPGConfigFile(Instance instance, String type) {
         AMedia file = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             String content = port.getPGConfigFile(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName(), type);
             if (content != null) {
                 file = new AMedia(Labels.getLabel(CommonConstants.LABEL_CONFIG + type), null, "text/plain", content);
@@ -96,8 +93,7 @@ public class FileHelper {
     public String[] getSlowLogs(Instance instance) {
         String[] slowLogs = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             String slowLogsString = port.getSlowLogs(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName());
             if (slowLogsString != null && !slowLogsString.isEmpty()) {
                 String[] tempLogs = slowLogsString.split(":");
@@ -120,8 +116,7 @@ public class FileHelper {
     public String[] getOracleLogs(Instance instance) {
         String[] logs = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             String logsString = port.getOracleLogs(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName());
             if (logsString != null && !logsString.isEmpty()) {
                 logs = logsString.split(":");
@@ -140,8 +135,7 @@ public class FileHelper {
     public String[] getOraLogs(Instance instance) {
         String[] logs = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             String logsString = port.getOraLogs(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName());
             if (logsString != null && !logsString.isEmpty()) {
                 logs = logsString.split(":");
@@ -160,8 +154,7 @@ public class FileHelper {
     public String[] getPGLogs(Instance instance) {
         String[] logs = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             String logsString = port.getPGLogs(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName());
             if (logsString != null && !logsString.isEmpty()) {
                 logs = logsString.split(":");
@@ -181,8 +174,7 @@ public class FileHelper {
     public String getServedFileURL(Instance instance, String filePath) {
         String url = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             url = port.serveFile(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName(), filePath);
         } catch (Exception ex) {
             Logger.getLogger(FileHelper.class.getName()).log(Level.SEVERE, "ERROR SERVING FILE ON INSTANCE " + instance.getDbName(), ex.getMessage());
@@ -32,6 +32,25 @@ public class FormValidations {
      * @return true if username is valid, false otherwise.
      */
     public static UserInfo isUsernameValid(Textbox username, AuthenticationHelper authenticationHelper) {
+        if (!isUsernameFormatValid(username))
+            return null;
+        //Check if the user exists
+        UserInfo info = authenticationHelper.getUserInfo(username.getValue());
+        if (info != null && info.getCcid() > 0) {
+            return info;
+        }
+        else {
+            username.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_USERNAME_NOT_FOUND));
+            return null;
+        }
+    }
+    
+    /**
+     * Validates the format of a username, without checking if the user exists.
+     * @param username Textbox with the username to validate.
+     * @return true if the username is well formed, false otherwise.
+     */
+    public static boolean isUsernameFormatValid(Textbox username) {
         //If there are no previous errors
         if (username.getErrorMessage() == null || username.getErrorMessage().isEmpty()) {
             //Trim and lowercase
@@ -39,30 +58,22 @@ public class FormValidations {
             //Check if user has entered a value
             if (username.getValue().isEmpty()) {
                 username.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_USERNAME_EMPTY));
-                return null;
+                return false;
             }
             //Check dbName length
             if (username.getValue().length() > CommonConstants.MAX_USERNAME_LENGTH) {
                 username.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_USERNAME_LENGTH));
-                return null;
+                return false;
             }
             //ASCII digits and non-digits
             if (!Pattern.matches("[a-z]*", username.getValue())) {
                 username.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_USERNAME_CHARS));
-                return null;
-            }
-            //Check if the user exists      
-            UserInfo info = authenticationHelper.getUserInfo(username.getValue());
-            if (info != null && info.getCcid() > 0) {
-                return info;
-            }
-            else {
-                username.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_USERNAME_NOT_FOUND));
-                return null;
+                return false;
             }
         }
         else
-            return null;
+            return false;
+        return true;
     }
     
     /**
@@ -104,6 +115,23 @@ public class FormValidations {
      * @return true if e-group name is valid, false otherwise.
      */
     public static boolean isEGroupValid(Textbox eGroup, String dbType, EGroupHelper helper) {
+        if (!isEGroupFormatValid(eGroup, dbType))
+            return false;
+        //Check if egroup is EGORUPS_ONLY
+        if (eGroup.getValue().length() > 0 && helper.isEgroupsOnly(eGroup.getValue())) {
+            eGroup.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_EGROUPS_ONLY));
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Validates the format of an e-group name, without looking the e-group up.
+     * @param eGroup Textbox with the e-group to validate.
+     * @param dbType type of the DB.
+     * @return true if the e-group name is well formed, false otherwise.
+     */
+    public static boolean isEGroupFormatValid(Textbox eGroup, String dbType) {
         //If there are no previous errors
         if (eGroup.getErrorMessage() == null || eGroup.getErrorMessage().isEmpty()) {
             //Trim and lowercase
@@ -124,11 +152,6 @@ public class FormValidations {
                     eGroup.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_CHARS));
                     return false;
                 }
-                //Check if egroup is EGORUPS_ONLY
-                if (helper.isEgroupsOnly(eGroup.getValue())) {
-                    eGroup.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_E_GROUP_EGROUPS_ONLY));
-                    return false;
-                }
             }
             //If egroup is empty and the instance is Oracle 12c show error
             else {
@@ -332,6 +355,26 @@ public class FormValidations {
      * @return true if DB name is valid, false otherwise
      */
     public static boolean isMasterValid(Textbox master, InstanceDAO instanceDAO) {
+        if (!isMasterFormatValid(master))
+            return false;
+        //If it's empty return true
+        if (master.getValue().isEmpty())
+            return true;
+        Instance masterInstance = instanceDAO.selectByDbName(master.getValue(), null);
+        //Check that master exists
+        if (masterInstance == null) {
+            master.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_MASTER_DOES_NOT_EXIST));
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Validates the format of a master, without checking if the master exists.
+     * @param master Textbox with the master to validate.
+     * @return true if the master is empty or well formed, false otherwise.
+     */
+    public static boolean isMasterFormatValid(Textbox master) {
         //If there are no previous errors
         if (master.getErrorMessage() == null || master.getErrorMessage().isEmpty()) {
             //Trim and lowercase
@@ -349,12 +392,6 @@ public class FormValidations {
                 master.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_DB_NAME_CHARS));
                 return false;
             }
-            Instance masterInstance = instanceDAO.selectByDbName(master.getValue(), null);
-            //Check that master exists
-            if (masterInstance == null) {
-                master.setErrorMessage(Labels.getLabel(CommonConstants.ERROR_MASTER_DOES_NOT_EXIST));
-                return false;
-            }
         }
         else
             return false;
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.StringTokenizer;
+import javax.servlet.http.HttpServletRequest;
+import org.zkoss.zk.ui.Execution;
+
+/**
+ * Groups of the authenticated user, as sent by ADFS in the group header. The
+ * header is parsed once per request, and the result is kept in the request so
+ * filters, controllers and renderers can check memberships without parsing it
+ * again.
+ */
+public final class GroupMembership {
+
+    /**
+     * Group header, as received.
+     */
+    private final String header;
+
+    /**
+     * Groups, in lower case.
+     */
+    private final Set<String> groups;
+
+    /**
+     * Indicates if the user belongs to the admin e-group.
+     */
+    private final boolean admin;
+
+    /**
+     * Parses a group header.
+     * @param header groups separated by ";".
+     */
+    public GroupMembership(String header) {
+        this.header = header;
+        Set<String> set = new HashSet<>();
+        if (header != null) {
+            StringTokenizer tokenizer = new StringTokenizer(header, ";");
+            while (tokenizer.hasMoreTokens())
+                set.add(tokenizer.nextToken().toLowerCase());
+        }
+        this.groups = Collections.unmodifiableSet(set);
+        this.admin = isMember(ConfigLoader.getProperty(CommonConstants.ADMIN_E_GROUP));
+    }
+
+    /**
+     * Gets the groups of the user of a request, parsing them only the first time.
+     * @param request HTTP request.
+     * @return groups of the user.
+     */
+    public static GroupMembership get(HttpServletRequest request) {
+        GroupMembership membership = (GroupMembership) request.getAttribute(CommonConstants.ATTRIBUTE_REQUEST_GROUPS);
+        if (membership == null) {
+            membership = new GroupMembership(request.getHeader(CommonConstants.ADFS_GROUP));
+            request.setAttribute(CommonConstants.ATTRIBUTE_REQUEST_GROUPS, membership);
+        }
+        return membership;
+    }
+
+    /**
+     * Gets the groups of the user of a ZK execution, parsing them only the
+     * first time in the request.
+     * @param execution current execution.
+     * @return groups of the user.
+     */
+    public static GroupMembership get(Execution execution) {
+        GroupMembership membership = (GroupMembership) execution.getAttribute(CommonConstants.ATTRIBUTE_REQUEST_GROUPS);
+        if (membership == null) {
+            membership = new GroupMembership(execution.getHeader(CommonConstants.ADFS_GROUP));
+            execution.setAttribute(CommonConstants.ATTRIBUTE_REQUEST_GROUPS, membership);
+        }
+        return membership;
+    }
+
+    /**
+     * Checks if the user belongs to a group (ignoring case).
+     * @param group group to check.
+     * @return true if the user belongs to the group.
+     */
+    public boolean isMember(String group) {
+        return group != null && groups.contains(group.toLowerCase());
+    }
+
+    /**
+     * Checks if the user belongs to the admin e-group.
+     * @return true if the user is an admin.
+     */
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    /**
+     * Gets the group header this object was parsed from.
+     * @return groups separated by ";".
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    public Set<String> getGroups() {
+        return groups;
+    }
+}
@@ -14,6 +14,7 @@ import ch.cern.dbod.db.dao.JobDAO;
 import ch.cern.dbod.db.entity.CommandParam;
 import ch.cern.dbod.db.entity.Instance;
 import ch.cern.dbod.db.entity.Job;
+import ch.cern.dbod.db.entity.JobRequest;
 import ch.cern.dbod.db.entity.Snapshot;
 import ch.cern.dbod.exception.ConfigFileSizeException;
 import static ch.cern.dbod.util.CommonConstants.RUNDECK_DO_BACKUP;
@@ -73,20 +74,8 @@ public class JobHelper {
      * @return true if the creation of this job was successful, false otherwise.
      */
     public boolean doStartup(Instance instance, String username) {
-        Date now = new Date();
-        //Create job
-        Job job = new Job();
-        /*job.setUsername(instance.getOwner());
-        job.setDbName(instance.getDbName());
-        job.setCommandName(CommonConstants.JOB_STARTUP);
-        job.setType(instance.getDbType());*/
-        job.setCreationDate(now);
-        job.setRequester(username);
-        if (adminMode)
-            job.setAdminAction(1);
-        else
-            job.setAdminAction(0);
-        job.setState(CommonConstants.JOB_STATE_PENDING);
+        //Create job (the same as in the collective actions)
+        Job job = createJob(instance, CommonConstants.JOB_STARTUP, username);
 
         //Execute
         int result = jobDAO.insert(job, new ArrayList<CommandParam>());
@@ -107,20 +96,8 @@ public class JobHelper {
      * @return true if the creation of this job was successful, false otherwise.
      */
     public boolean doShutdown(Instance instance, String username) {
-        Date now = new Date();
-        //Create job
-        Job job = new Job();
-        /*job.setUsername(instance.getOwner());
-        job.setDbName(instance.getDbName());
-        job.setCommandName(CommonConstants.JOB_SHUTDOWN);
-        job.setType(instance.getDbType());*/
-        job.setCreationDate(now);
-        job.setRequester(username);
-        if (adminMode)
-            job.setAdminAction(1);
-        else
-            job.setAdminAction(0);
-        job.setState(CommonConstants.JOB_STATE_PENDING);
+        //Create job (the same as in the collective actions)
+        Job job = createJob(instance, CommonConstants.JOB_SHUTDOWN, username);
         
         //Param
         List<CommandParam> params = new ArrayList<>();
@@ -337,22 +314,115 @@ public class JobHelper {
      * @return true if the creation of this job was successful, false otherwise.
      */
     public boolean doUpgrade (Instance instance, String username) {
-        Date now = new Date();
-        //Create job
+        //Create job (the same as in the collective actions)
+        Job job = createJob(instance, CommonConstants.JOB_UPGRADE, username);
+
+        //Create params
+        List<CommandParam> params = getUpgradeParams(instance);
+
+        //Execute
+        int result = jobDAO.insert(job, params);
+        //If everything went OK update instance object
+        if (result > 0) {
+            instance.setState(CommonConstants.INSTANCE_STATE_JOB_PENDING);
+            Logger.getLogger(JobHelper.class.getName()).log(Level.INFO, "UPGRADE JOB FOR REQUESTER {0} ON INSTANCE {1} SUCCESSFULLY CREATED", new Object[]{username, instance.getDbName()});
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Starts up several instances, creating all the jobs in one transaction.
+     * @param instances instances to start up.
+     * @param username requester of the jobs.
+     * @return list of instances whose job could not be created.
+     */
+    public List<Instance> doStartupAll(List<Instance> instances, String username) {
+        List<JobRequest> requests = new ArrayList<>();
+        for (Instance instance : instances)
+            requests.add(new JobRequest(createJob(instance, CommonConstants.JOB_STARTUP, username), new ArrayList<CommandParam>()));
+        return insertAll(instances, requests, username);
+    }
+
+    /**
+     * Shuts down several instances, creating all the jobs in one transaction.
+     * @param instances instances to shut down.
+     * @param username requester of the jobs.
+     * @return list of instances whose job could not be created.
+     */
+    public List<Instance> doShutdownAll(List<Instance> instances, String username) {
+        List<JobRequest> requests = new ArrayList<>();
+        for (Instance instance : instances)
+            requests.add(new JobRequest(createJob(instance, CommonConstants.JOB_SHUTDOWN, username), new ArrayList<CommandParam>()));
+        return insertAll(instances, requests, username);
+    }
+
+    /**
+     * Upgrades several instances, creating all the jobs in one transaction.
+     * @param instances instances to upgrade.
+     * @param username requester of the jobs.
+     * @return list of instances whose job could not be created.
+     */
+    public List<Instance> doUpgradeAll(List<Instance> instances, String username) {
+        List<JobRequest> requests = new ArrayList<>();
+        for (Instance instance : instances)
+            requests.add(new JobRequest(createJob(instance, CommonConstants.JOB_UPGRADE, username), getUpgradeParams(instance)));
+        return insertAll(instances, requests, username);
+    }
+
+    /**
+     * Creates a pending job for an instance, used by both the single and the
+     * collective actions.
+     * @param instance instance the job is for.
+     * @param commandName command to execute.
+     * @param username requester of the job.
+     * @return the job.
+     */
+    private Job createJob(Instance instance, String commandName, String username) {
         Job job = new Job();
-        /*job.setUsername(instance.getOwner());
-        job.setDbName(instance.getDbName());
-        job.setCommandName(CommonConstants.JOB_UPGRADE);
-        job.setType(instance.getDbType());*/
-        job.setCreationDate(now);
+        job.setInstance_id(instance.getId() != null ? instance.getId() : 0);
+        job.setCommandName(commandName);
+        job.setCreationDate(new Date());
         job.setRequester(username);
         if (adminMode)
             job.setAdminAction(1);
         else
             job.setAdminAction(0);
         job.setState(CommonConstants.JOB_STATE_PENDING);
+        return job;
+    }
 
-        //Create params
+    /**
+     * Inserts the jobs of several instances and updates the instance objects.
+     * @param instances instances the jobs are for.
+     * @param requests jobs to insert, in the same order as the instances.
+     * @param username requester of the jobs.
+     * @return list of instances whose job could not be created.
+     */
+    private List<Instance> insertAll(List<Instance> instances, List<JobRequest> requests, String username) {
+        List<Instance> failed = new ArrayList<>();
+        int[] results = jobDAO.insertAll(requests);
+        for (int i = 0; i < instances.size(); i++) {
+            Instance instance = instances.get(i);
+            if (results[i] > 0) {
+                instance.setState(CommonConstants.INSTANCE_STATE_JOB_PENDING);
+                Logger.getLogger(JobHelper.class.getName()).log(Level.INFO, "{0} JOB FOR REQUESTER {1} ON INSTANCE {2} SUCCESSFULLY CREATED",
+                        new Object[]{requests.get(i).getJob().getCommandName(), username, instance.getDbName()});
+            }
+            else {
+                failed.add(instance);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Gets the parameters of an upgrade job.
+     * @param instance instance to upgrade.
+     * @return list of parameters.
+     */
+    private List<CommandParam> getUpgradeParams(Instance instance) {
         List<CommandParam> params = new ArrayList<>();
         
         //If the database is Oracle add version from
@@ -376,17 +446,7 @@ public class JobHelper {
         versionTo.setName(CommonConstants.PARAM_VERSION_TO);
         versionTo.setValue(instance.getUpgradeTo());
         params.add(versionTo);
-
-        //Execute
-        int result = jobDAO.insert(job, params);
-        //If everything went OK update instance object
-        if (result > 0) {
-            instance.setState(CommonConstants.INSTANCE_STATE_JOB_PENDING);
-            Logger.getLogger(JobHelper.class.getName()).log(Level.INFO, "UPGRADE JOB FOR REQUESTER {0} ON INSTANCE {1} SUCCESSFULLY CREATED", new Object[]{username, instance.getDbName()});
-            return true;
-        } else {
-            return false;
-        }
+        return params;
     }
 
     /**
@@ -10,7 +10,6 @@
 package ch.cern.dbod.util;
 
 import ch.cern.dbod.db.entity.Instance;
-import ch.cern.dbod.ws.DBODWebService;
 import ch.cern.dbod.ws.DBODWebServicePortType;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,8 +49,7 @@ public class ParamsHelper {
     public String getParam(Instance instance, String param) {
         String paramValue = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             paramValue = port.getParam(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName(), param);
         } catch (Exception ex) {
             Logger.getLogger(ParamsHelper.class.getName()).log(Level.SEVERE, "ERROR OBTAINING PARAM ON INSTANCE " + instance.getDbName(), ex.getMessage());
@@ -67,8 +65,7 @@ public class ParamsHelper {
     public String getHost(Instance instance) {
         String host = null;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             host = port.getHost(CommonConstants.PREFIX_INSTANCE_NAME + instance.getDbName());
         } catch (Exception ex) {
             Logger.getLogger(ParamsHelper.class.getName()).log(Level.SEVERE, "ERROR OBTAINING HOST OF INSTANCE " + instance.getDbName(), ex.getMessage());
@@ -84,8 +81,7 @@ public class ParamsHelper {
     public Boolean checkAppDynamics(Instance instance) {
         Boolean has_appdyn = false;
         try {
-            DBODWebService service = new DBODWebService();
-            DBODWebServicePortType port = service.getDBODWebServicePort();
+            DBODWebServicePortType port = WebServiceHelper.getDBODPort();
             switch(instance.getDbType())
             {
                 case CommonConstants.DB_TYPE_MYSQL:
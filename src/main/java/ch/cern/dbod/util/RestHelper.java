@@ -9,20 +9,34 @@
 package ch.cern.dbod.util;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Consts;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.ParseException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.*;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
 /**
@@ -30,7 +44,222 @@ import org.apache.http.util.EntityUtils;
  */
 public class RestHelper {
     
-    private static Gson init() {
+    /**
+     * Default maximum number of pooled connections to the API.
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    
+    /**
+     * Default maximum number of pooled connections per route.
+     */
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    
+    /**
+     * Default time (in seconds) after which idle connections are evicted.
+     */
+    private static final int DEFAULT_IDLE_TIMEOUT = 30;
+    
+    /**
+     * Default time (in seconds) to keep connections alive when the API does not say it.
+     */
+    private static final int DEFAULT_KEEP_ALIVE = 60;
+    
+    /**
+     * Default maximum number of responses kept for conditional requests.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 100;
+    
+    /**
+     * Connection manager shared by all the requests to the API.
+     */
+    private static PoolingHttpClientConnectionManager connectionManager;
+    
+    /**
+     * Client shared by all the requests to the API.
+     */
+    private static CloseableHttpClient httpClient;
+    
+    /**
+     * Thread evicting expired and idle connections from the pool.
+     */
+    private static IdleConnectionEvictor evictor;
+    
+    /**
+     * GET requests currently being executed, by URL and auth header.
+     */
+    private static final ConcurrentHashMap<String, FutureTask<ApiResponse>> inFlightRequests = new ConcurrentHashMap<>();
+    
+    /**
+     * Last responses with an ETag or Last-Modified header, by URL and auth
+     * header. Used to send conditional requests and reuse the body on a 304.
+     */
+    private static final Map<String, ApiResponse> responseCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, ApiResponse>(16, 0.75f, true) {
+                private final int maxSize = ConfigLoader.getIntProperty(CommonConstants.DBOD_API_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+                
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ApiResponse> eldest) {
+                    return size() > maxSize;
+                }
+            });
+    
+    /**
+     * Gets the application wide HTTP client, creating it on first use with the
+     * pool settings defined in the configuration file.
+     * @return pooled HTTP client.
+     */
+    private static synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            final int keepAlive = ConfigLoader.getIntProperty(CommonConstants.DBOD_API_KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+            int idleTimeout = ConfigLoader.getIntProperty(CommonConstants.DBOD_API_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+            
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(ConfigLoader.getIntProperty(CommonConstants.DBOD_API_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+            connectionManager.setDefaultMaxPerRoute(ConfigLoader.getIntProperty(CommonConstants.DBOD_API_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+            
+            //Honour the Keep-Alive header of the API, but never keep connections forever
+            ConnectionKeepAliveStrategy keepAliveStrategy = new DefaultConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                    long duration = super.getKeepAliveDuration(response, context);
+                    if (duration <= 0 || duration > keepAlive * 1000L)
+                        return keepAlive * 1000L;
+                    return duration;
+                }
+            };
+            
+            httpClient = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .build();
+            
+            evictor = new IdleConnectionEvictor(connectionManager, idleTimeout);
+            evictor.start();
+        }
+        return httpClient;
+    }
+    
+    /**
+     * Closes the shared HTTP client and all its pooled connections. Called
+     * when the application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        if (evictor != null) {
+            evictor.interrupt();
+            evictor = null;
+        }
+        try {
+            if (httpClient != null)
+                httpClient.close();
+        } catch (IOException ex) {
+            Logger.getLogger(RestHelper.class.getName()).log(Level.WARNING, "ERROR CLOSING HTTP CLIENT", ex);
+        } finally {
+            if (connectionManager != null)
+                connectionManager.shutdown();
+            httpClient = null;
+            connectionManager = null;
+            responseCache.clear();
+        }
+    }
+    
+    /**
+     * Executes a request with the shared client.
+     * @param request request to execute.
+     * @return the response, which has to be released with releaseResponse.
+     * @throws IOException if there is an error communicating with the API.
+     */
+    private static CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        return getHttpClient().execute(request);
+    }
+    
+    /**
+     * Consumes whatever is left of the response body and closes it, so the
+     * connection goes back to the pool.
+     * @param response response to release.
+     */
+    private static void releaseResponse(CloseableHttpResponse response) {
+        try {
+            EntityUtils.consume(response.getEntity());
+        } catch (Exception e) {
+        }
+        try {
+            response.close();
+        } catch (Exception e) {
+        }
+    }
+    
+    /**
+     * Executes a GET request and reads the whole response. Identical requests
+     * (same URL and auth header) issued while another one is still in flight
+     * do not reach the API: they wait for the first one and share its response.
+     * If the API sent an ETag or Last-Modified header the last time, the
+     * request is made conditional and the previous body is reused on a 304.
+     * @param request GET request to execute.
+     * @return the response of the API.
+     * @throws IOException if there is an error communicating with the API.
+     */
+    private static ApiResponse get(final HttpGet request) throws IOException {
+        Header auth = request.getFirstHeader("auth");
+        final String key = request.getURI().toString() + (auth != null ? "|" + auth.getValue() : "");
+        
+        FutureTask<ApiResponse> task = new FutureTask<>(new Callable<ApiResponse>() {
+            @Override
+            public ApiResponse call() throws IOException {
+                ApiResponse cached = responseCache.get(key);
+                if (cached != null) {
+                    if (cached.getETag() != null)
+                        request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+                    if (cached.getLastModified() != null)
+                        request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+                }
+                
+                CloseableHttpResponse response = execute(request);
+                try {
+                    if (cached != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED)
+                        return cached;
+                    
+                    ApiResponse result = new ApiResponse(response);
+                    if (result.getStatusCode() == HttpStatus.SC_OK && (result.getETag() != null || result.getLastModified() != null))
+                        responseCache.put(key, result);
+                    else
+                        responseCache.remove(key);
+                    return result;
+                } finally {
+                    releaseResponse(response);
+                }
+            }
+        });
+        FutureTask<ApiResponse> inFlight = inFlightRequests.putIfAbsent(key, task);
+        if (inFlight == null) {
+            inFlight = task;
+            try {
+                task.run();
+            } finally {
+                inFlightRequests.remove(key, task);
+            }
+        }
+        
+        try {
+            return inFlight.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("INTERRUPTED WAITING FOR " + request.getURI());
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new IOException(ex.getCause());
+        }
+    }
+    
+    /**
+     * Gson instance shared by all the requests. Gson is thread-safe and
+     * caches the type adapters it builds, so it should only be created once.
+     */
+    private static final Gson gson = createGson();
+    
+    private static Gson createGson() {
         BooleanSerializer serializer = new BooleanSerializer();
         Gson gson = new GsonBuilder()
                     .registerTypeAdapter(boolean.class, serializer)
@@ -60,19 +289,13 @@ public class RestHelper {
     }
     
     public static <T> T getObjectFromRestApi(String path, Class<T> object, String resName) throws IOException, ParseException, IllegalStateException {
-        Gson gson = init();
-        
-        HttpClient httpclient = HttpClientBuilder.create().build();
-
         HttpGet request = new HttpGet(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + path);
         addAuthorizationHeader(request);
         
-        HttpResponse response = httpclient.execute(request);
-        if (response.getStatusLine().getStatusCode() == 200)
+        ApiResponse response = get(request);
+        if (response.getStatusCode() == 200)
         {
-            String resp = EntityUtils.toString(response.getEntity());
-            JsonObject json = parseObject(resp).getAsJsonArray(resName).get(0).getAsJsonObject();
-            EntityUtils.consume(response.getEntity());
+            JsonObject json = parseObject(response.getBodyAsString()).getAsJsonArray(resName).get(0).getAsJsonObject();
 
             T result = gson.fromJson(json, object);
             return result;
@@ -82,17 +305,13 @@ public class RestHelper {
     }
     
     public static JsonObject getJsonObjectFromRestApi(String path) throws IOException, ParseException, IllegalStateException {
-        HttpClient httpclient = HttpClientBuilder.create().build();
-
         HttpGet request = new HttpGet(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + path);
         addAuthorizationHeader(request);
 
-        HttpResponse response = httpclient.execute(request);
-        if (response.getStatusLine().getStatusCode() == 200)
+        ApiResponse response = get(request);
+        if (response.getStatusCode() == 200)
         {
-            String resp = EntityUtils.toString(response.getEntity());
-            JsonObject json = parseObject(resp).getAsJsonObject();
-            EntityUtils.consume(response.getEntity());
+            JsonObject json = parseObject(response.getBodyAsString()).getAsJsonObject();
 
             return json;
         }
@@ -101,11 +320,9 @@ public class RestHelper {
     }
     
     public static <T> ArrayList<T> getObjectListFromRestApi(String path, HashMap<String, String> params, Class<T> object, String auth, String response) throws IOException, ParseException, IllegalStateException {
-        Gson gson = init();
         ArrayList<T> objectList = new ArrayList<>();
         
         try {
-            HttpClient httpclient = HttpClientBuilder.create().build();
             URIBuilder builder = new URIBuilder(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + path);
             if (params != null) {
                 for (Map.Entry<String, String> param : params.entrySet()) {
@@ -119,24 +336,10 @@ public class RestHelper {
                 request.addHeader("auth", auth);
             }
 
-            HttpResponse resp = httpclient.execute(request);
-            if (resp.getStatusLine().getStatusCode() == 200)
+            ApiResponse resp = get(request);
+            if (resp.getStatusCode() == 200)
             {
-                String respStr = EntityUtils.toString(resp.getEntity());
-                EntityUtils.consume(resp.getEntity());
-                JsonArray jList;
-                if (response != null) {
-                    jList = parseObject(respStr).getAsJsonArray(response);
-                } else {
-                    jList = parseList(respStr).getAsJsonArray();
-                }
-
-                Iterator<JsonElement> itr = jList.iterator();
-                while (itr.hasNext()) {
-                    JsonObject jItem = itr.next().getAsJsonObject();
-                    T item = gson.fromJson(jItem, object);
-                    objectList.add(item);
-                }
+                readObjectList(resp, object, response, objectList);
             }
         } catch (URISyntaxException ex) {
             Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, null, ex);
@@ -145,18 +348,54 @@ public class RestHelper {
         return objectList;
     }
 
-    public static String getValueFromRestApi(String path) throws IOException, ParseException {
-        HttpClient httpclient = HttpClientBuilder.create().build();
+    /**
+     * Reads a list of objects from the body of a response, binding each element
+     * as soon as it is read instead of building the whole JSON tree in memory.
+     * @param resp response from the API.
+     * @param object class of the objects in the list.
+     * @param response name of the attribute holding the list, or null if the body is the list itself.
+     * @param objectList list where the objects are added.
+     * @throws IOException if there is an error reading the body.
+     */
+    private static <T> void readObjectList(ApiResponse resp, Class<T> object, String response, List<T> objectList) throws IOException {
+        if (resp.getBody() == null)
+            return;
+        
+        try (JsonReader reader = new JsonReader(resp.getBodyReader())) {
+            if (response != null) {
+                //Skip everything until the attribute containing the list
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (response.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readArray(reader, object, objectList);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                readArray(reader, object, objectList);
+            }
+        }
+    }
+    
+    private static <T> void readArray(JsonReader reader, Class<T> object, List<T> objectList) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            T item = gson.fromJson(reader, object);
+            objectList.add(item);
+        }
+        reader.endArray();
+    }
 
+    public static String getValueFromRestApi(String path) throws IOException, ParseException {
         HttpGet request = new HttpGet(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + path);
         addAuthorizationHeader(request);
 
-        HttpResponse response = httpclient.execute(request);
-        if (response.getStatusLine().getStatusCode() == 200)
+        ApiResponse response = get(request);
+        if (response.getStatusCode() == 200)
         {
-            String value = EntityUtils.toString(response.getEntity());
-            EntityUtils.consume(response.getEntity());
-            return value;
+            return response.getBodyAsString();
         }
         
         return null;
@@ -164,8 +403,6 @@ public class RestHelper {
     
     public static boolean putValueToRestApi(String value, String path) {
         try {
-            HttpClient httpclient = HttpClientBuilder.create().build();
-            
             HttpPut request = new HttpPut(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + path);
             addAuthorizationHeader(request);
             
@@ -173,11 +410,15 @@ public class RestHelper {
             /* Body of request */
             request.setEntity(jsonData);
             
-            HttpResponse response = httpclient.execute(request);
-            if (response.getStatusLine().getStatusCode() == 200) {
-                return true;
-            } else {
-                Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+            CloseableHttpResponse response = execute(request);
+            try {
+                if (response.getStatusLine().getStatusCode() == 200) {
+                    return true;
+                } else {
+                    Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+                }
+            } finally {
+                releaseResponse(response);
             }
         } catch (IOException e) {
             Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, null, e);
@@ -190,20 +431,21 @@ public class RestHelper {
     
     public static String runRundeckJob(String job, String instance) {
         try {
-            HttpClient httpclient = HttpClientBuilder.create().build();
-            
             HttpPost request = new HttpPost(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + "api/v1/rundeck/job/" + job + "/" + instance);
             addAuthorizationHeader(request);
             
-            HttpResponse response = httpclient.execute(request);
-            if (response.getStatusLine().getStatusCode() == 200)
-            {
-                String resp = EntityUtils.toString(response.getEntity());
-                String result = parseObject(resp).getAsJsonObject("response").getAsJsonArray("entries").get(0).getAsJsonObject().get("log").getAsString();
-                EntityUtils.consume(response.getEntity());
-                return result;
-            } else {
-                Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+            CloseableHttpResponse response = execute(request);
+            try {
+                if (response.getStatusLine().getStatusCode() == 200)
+                {
+                    String resp = EntityUtils.toString(response.getEntity());
+                    String result = parseObject(resp).getAsJsonObject("response").getAsJsonArray("entries").get(0).getAsJsonObject().get("log").getAsString();
+                    return result;
+                } else {
+                    Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+                }
+            } finally {
+                releaseResponse(response);
             }
         } catch (IOException | ParseException e) {
             Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, null, e);
@@ -216,8 +458,6 @@ public class RestHelper {
     
     public static boolean putJsonToRestApi(JsonElement json, String path) {
         try {
-            HttpClient httpclient = HttpClientBuilder.create().build();
-            
             HttpPut request = new HttpPut(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + path);
             addAuthorizationHeader(request);
 
@@ -225,11 +465,15 @@ public class RestHelper {
             /* Body of request */
             request.setEntity(jsonData);
             
-            HttpResponse response = httpclient.execute(request);
-            if (response.getStatusLine().getStatusCode() == 200) {
-                return true;
-            } else {
-                Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+            CloseableHttpResponse response = execute(request);
+            try {
+                if (response.getStatusLine().getStatusCode() == 200) {
+                    return true;
+                } else {
+                    Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+                }
+            } finally {
+                releaseResponse(response);
             }
         } catch (IOException | ParseException e) {
             Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, null, e);
@@ -242,8 +486,6 @@ public class RestHelper {
     
     public static boolean postJsonToRestApi(JsonElement json, String path) {
         try {
-            HttpClient httpclient = HttpClientBuilder.create().build();
-            
             HttpPost request = new HttpPost(ConfigLoader.getProperty(CommonConstants.DBOD_API_LOCATION) + path);
             addAuthorizationHeader(request);
 
@@ -251,11 +493,15 @@ public class RestHelper {
             /* Body of request */
             request.setEntity(jsonData);
             
-            HttpResponse response = httpclient.execute(request);
-            if (response.getStatusLine().getStatusCode() == 204) {
-                return true;
-            } else {
-                Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+            CloseableHttpResponse response = execute(request);
+            try {
+                if (response.getStatusLine().getStatusCode() == 204) {
+                    return true;
+                } else {
+                    Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, "API Returned error code: {0}", response.getStatusLine().getStatusCode());
+                }
+            } finally {
+                releaseResponse(response);
             }
         } catch (IOException | ParseException e) {
             Logger.getLogger(RestHelper.class.getName()).log(Level.SEVERE, null, e);
@@ -267,13 +513,122 @@ public class RestHelper {
     }
     
     public static <T> T fromJson(JsonObject json, Class<T> object) {
-        Gson gson = init();
         T result = gson.fromJson(json, object);
         return result;
     }
     
     public static String toJson(Object object) {
-        Gson gson = init();
         return gson.toJson(object);
     }
+    
+    /**
+     * Response of a GET request, fully read so it can be shared between all
+     * the threads waiting for the same request. It must not be modified.
+     */
+    private static class ApiResponse {
+        
+        /**
+         * HTTP status code.
+         */
+        private final int statusCode;
+        
+        /**
+         * Body of the response, or null if there was none.
+         */
+        private final byte[] body;
+        
+        /**
+         * Charset of the body.
+         */
+        private final Charset charset;
+        
+        /**
+         * ETag header of the response, if any.
+         */
+        private final String eTag;
+        
+        /**
+         * Last-Modified header of the response, if any.
+         */
+        private final String lastModified;
+        
+        ApiResponse(HttpResponse response) throws IOException {
+            statusCode = response.getStatusLine().getStatusCode();
+            Header eTagHeader = response.getFirstHeader(HttpHeaders.ETAG);
+            eTag = eTagHeader != null ? eTagHeader.getValue() : null;
+            Header lastModifiedHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            lastModified = lastModifiedHeader != null ? lastModifiedHeader.getValue() : null;
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                Charset entityCharset = ContentType.getOrDefault(entity).getCharset();
+                charset = entityCharset != null ? entityCharset : Consts.UTF_8;
+                body = EntityUtils.toByteArray(entity);
+            } else {
+                charset = Consts.UTF_8;
+                body = null;
+            }
+        }
+        
+        int getStatusCode() {
+            return statusCode;
+        }
+        
+        byte[] getBody() {
+            return body;
+        }
+        
+        String getETag() {
+            return eTag;
+        }
+        
+        String getLastModified() {
+            return lastModified;
+        }
+        
+        String getBodyAsString() {
+            return body != null ? new String(body, charset) : null;
+        }
+        
+        Reader getBodyReader() {
+            return new InputStreamReader(new ByteArrayInputStream(body), charset);
+        }
+    }
+    
+    /**
+     * Background thread that periodically closes expired connections and the
+     * ones that have been idle for too long, so the pool does not keep stale
+     * sockets to the API.
+     */
+    private static class IdleConnectionEvictor extends Thread {
+        
+        /**
+         * Connection manager to clean up.
+         */
+        private final PoolingHttpClientConnectionManager manager;
+        
+        /**
+         * Idle time (in seconds) after which connections are closed.
+         */
+        private final int idleTimeout;
+        
+        IdleConnectionEvictor(PoolingHttpClientConnectionManager manager, int idleTimeout) {
+            super("dbod-api-connection-evictor");
+            this.manager = manager;
+            this.idleTimeout = idleTimeout;
+            setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    Thread.sleep(Math.max(1, idleTimeout / 2) * 1000L);
+                    manager.closeExpiredConnections();
+                    manager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException ex) {
+                //Application is shutting down
+            }
+        }
+    }
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.util;
+
+import ch.cern.dbod.db.dao.InstanceDAO;
+import ch.cern.dbod.db.dao.JobDAO;
+import ch.cern.dbod.db.dao.UpgradeDAO;
+import ch.cern.dbod.db.entity.Instance;
+import ch.cern.dbod.db.entity.Job;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.zkoss.zk.ui.Desktop;
+import org.zkoss.zk.ui.DesktopUnavailableException;
+import org.zkoss.zk.ui.Executions;
+import org.zkoss.zk.ui.UiException;
+import org.zkoss.zk.ui.event.Event;
+import org.zkoss.zk.ui.event.EventListener;
+
+/**
+ * Shared poller of instance and job states. A single background thread per
+ * application node fetches the states while there are pages subscribed, and
+ * pushes the changes to the desktops interested in them using ZK server push.
+ */
+public class StateMonitor {
+
+    /**
+     * Name of the event sent to subscribed desktops. Its data is a
+     * {@link StateChange}.
+     */
+    public static final String ON_STATE_CHANGE = "onStateChange";
+
+    /**
+     * Default interval (in seconds) between polls.
+     */
+    private static final int DEFAULT_INTERVAL = 30;
+
+    /**
+     * Subscriptions, by desktop.
+     */
+    private static final ConcurrentHashMap<Desktop, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * Scheduler running the poller.
+     */
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * Instance states seen in the last poll, by DB name.
+     */
+    private static Map<String, String> instanceStates;
+
+    /**
+     * Job states seen in the last poll, by DB name and job ID.
+     */
+    private static Map<String, Map<Integer, String>> jobStates = new HashMap<>();
+
+    /**
+     * Subscribes a desktop to state changes, replacing any previous
+     * subscription of the desktop. Must be called from an execution of the
+     * desktop, as it enables server push on it.
+     * @param desktop desktop to push changes to.
+     * @param dbNames DB names of the instances to watch, or null to watch all.
+     * @param jobs true to watch also the jobs of the instances.
+     * @param listener listener receiving {@link #ON_STATE_CHANGE} events.
+     * @return true if the desktop was subscribed, false if polling is disabled
+     * or server push could not be enabled.
+     */
+    public static boolean subscribe(Desktop desktop, Collection<String> dbNames, boolean jobs, EventListener<Event> listener) {
+        int interval = ConfigLoader.getIntProperty(CommonConstants.STATE_POLL_INTERVAL, DEFAULT_INTERVAL);
+        if (interval <= 0)
+            return false;
+        try {
+            if (!desktop.isServerPushEnabled())
+                desktop.enableServerPush(true);
+        } catch (UiException ex) {
+            Logger.getLogger(StateMonitor.class.getName()).log(Level.WARNING, "COULD NOT ENABLE SERVER PUSH FOR STATE CHANGES", ex);
+            return false;
+        }
+        subscriptions.put(desktop, new Subscription(desktop, dbNames != null ? new HashSet<>(dbNames) : null, jobs, listener));
+        start(interval);
+        return true;
+    }
+
+    /**
+     * Removes the subscription of a desktop.
+     * @param desktop desktop to unsubscribe.
+     */
+    public static void unsubscribe(Desktop desktop) {
+        subscriptions.remove(desktop);
+    }
+
+    /**
+     * Starts the poller if it is not running.
+     * @param interval interval between polls, in seconds.
+     */
+    private static synchronized void start(int interval) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "dbod-state-monitor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        poll();
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger(StateMonitor.class.getName()).log(Level.SEVERE, "ERROR POLLING INSTANCE STATES", ex);
+                    }
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Fetches the states of instances and watched jobs, and pushes the
+     * changes since the last poll to the subscribed desktops.
+     */
+    private static void poll() {
+        //Drop subscriptions of desktops that are gone
+        for (Iterator<Subscription> it = subscriptions.values().iterator(); it.hasNext();) {
+            if (!it.next().desktop.isAlive())
+                it.remove();
+        }
+        if (subscriptions.isEmpty()) {
+            //Start from scratch when a page subscribes again
+            instanceStates = null;
+            jobStates.clear();
+            return;
+        }
+
+        List<Instance> instances = new InstanceDAO().selectAll(ConfigLoader.getProperty(CommonConstants.WS_USER), new UpgradeDAO().selectAll());
+        if (instances == null)
+            return;
+
+        //Compare instance states
+        Map<String, Instance> byName = new HashMap<>(instances.size() * 2);
+        Map<String, String> newStates = new HashMap<>(instances.size() * 2);
+        Map<String, Instance> changedInstances = new HashMap<>();
+        for (Instance instance : instances) {
+            byName.put(instance.getDbName(), instance);
+            newStates.put(instance.getDbName(), instance.getState());
+            if (instanceStates != null && instanceStates.containsKey(instance.getDbName())
+                    && !equal(instanceStates.get(instance.getDbName()), instance.getState()))
+                changedInstances.put(instance.getDbName(), instance);
+        }
+        instanceStates = newStates;
+
+        //Compare job states of the instances watched with jobs
+        Set<String> watchedJobs = new HashSet<>();
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.jobs && subscription.dbNames != null)
+                watchedJobs.addAll(subscription.dbNames);
+        }
+        Map<String, Map<Integer, String>> newJobStates = new HashMap<>();
+        Set<String> changedJobs = new HashSet<>();
+        JobDAO jobDAO = new JobDAO();
+        for (String dbName : watchedJobs) {
+            Instance instance = byName.get(dbName);
+            if (instance == null)
+                continue;
+            List<Job> jobs = jobDAO.selectByInstance(instance);
+            if (jobs == null)
+                continue;
+            Map<Integer, String> states = new HashMap<>();
+            for (Job job : jobs)
+                states.put(job.getId(), job.getState());
+            Map<Integer, String> previous = jobStates.get(dbName);
+            if (previous != null && !previous.equals(states))
+                changedJobs.add(dbName);
+            newJobStates.put(dbName, states);
+        }
+        jobStates = newJobStates;
+
+        if (changedInstances.isEmpty() && changedJobs.isEmpty())
+            return;
+
+        //Push the changes each desktop is interested in
+        for (Subscription subscription : subscriptions.values()) {
+            Map<String, Instance> instancesForDesktop = new HashMap<>();
+            Set<String> jobsForDesktop = new HashSet<>();
+            for (Map.Entry<String, Instance> entry : changedInstances.entrySet()) {
+                if (subscription.dbNames == null || subscription.dbNames.contains(entry.getKey()))
+                    instancesForDesktop.put(entry.getKey(), entry.getValue());
+            }
+            if (subscription.jobs && subscription.dbNames != null) {
+                for (String dbName : changedJobs) {
+                    if (subscription.dbNames.contains(dbName))
+                        jobsForDesktop.add(dbName);
+                }
+            }
+            if (instancesForDesktop.isEmpty() && jobsForDesktop.isEmpty())
+                continue;
+            try {
+                Executions.schedule(subscription.desktop, subscription.listener,
+                        new Event(ON_STATE_CHANGE, null, new StateChange(instancesForDesktop, jobsForDesktop)));
+            } catch (DesktopUnavailableException | IllegalStateException ex) {
+                subscriptions.remove(subscription.desktop);
+            }
+        }
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    /**
+     * Stops the poller and removes all subscriptions. Called when the
+     * application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Subscription of a desktop.
+     */
+    private static class Subscription {
+        final Desktop desktop;
+        final Set<String> dbNames;
+        final boolean jobs;
+        final EventListener<Event> listener;
+
+        Subscription(Desktop desktop, Set<String> dbNames, boolean jobs, EventListener<Event> listener) {
+            this.desktop = desktop;
+            this.dbNames = dbNames;
+            this.jobs = jobs;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Changes pushed to a desktop.
+     */
+    public static class StateChange {
+
+        /**
+         * Instances whose state changed, by DB name.
+         */
+        private final Map<String, Instance> instances;
+
+        /**
+         * DB names of the instances whose jobs changed.
+         */
+        private final Set<String> jobs;
+
+        StateChange(Map<String, Instance> instances, Set<String> jobs) {
+            this.instances = instances;
+            this.jobs = jobs;
+        }
+
+        public Map<String, Instance> getInstances() {
+            return instances;
+        }
+
+        public Set<String> getJobs() {
+            return jobs;
+        }
+    }
+}
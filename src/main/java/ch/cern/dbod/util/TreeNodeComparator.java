@@ -47,24 +47,35 @@ public class TreeNodeComparator implements Comparator<OverviewTreeNode> {
     
     @Override
     public int compare(OverviewTreeNode o1, OverviewTreeNode o2)
+    {
+        return compare((Instance)o1.getData(), (Instance)o2.getData());
+    }
+    
+    /**
+     * Compares two instances, so they can be sorted without building tree nodes.
+     * @param i1 first instance.
+     * @param i2 second instance.
+     * @return result of the comparison, considering the sort direction.
+     */
+    public int compare(Instance i1, Instance i2)
     {
         switch(type)
         {
             case "STATE":
-                return stateToNumber(((Instance)o1.getData()).getState()).compareTo(stateToNumber(((Instance)o2.getData()).getState())) * (asc ? 1 : -1);
+                return stateToNumber(i1.getState()).compareTo(stateToNumber(i2.getState())) * (asc ? 1 : -1);
             case "USERNAME":
-                return ((Instance)o1.getData()).getOwner().compareTo(((Instance)o2.getData()).getOwner()) * (asc ? 1 : -1);
+                return i1.getOwner().compareTo(i2.getOwner()) * (asc ? 1 : -1);
             case "CREATIONDATE":
-                return ((Instance)o1.getData()).getCreationDate().compareTo(((Instance)o2.getData()).getCreationDate()) * (asc ? 1 : -1);
+                return i1.getCreationDate().compareTo(i2.getCreationDate()) * (asc ? 1 : -1);
             case "HOST":
-                return ((Instance)o1.getData()).getHost().compareTo(((Instance)o2.getData()).getHost()) * (asc ? 1 : -1);
+                return i1.getHost().compareTo(i2.getHost()) * (asc ? 1 : -1);
             case "CATEGORY":
-                return ((Instance)o1.getData()).getCategory().compareTo(((Instance)o2.getData()).getCategory()) * (asc ? 1 : -1);
+                return i1.getCategory().compareTo(i2.getCategory()) * (asc ? 1 : -1);
             case "DBTYPE":
-                return ((Instance)o1.getData()).getDbType().compareTo(((Instance)o2.getData()).getDbType()) * (asc ? 1 : -1);
+                return i1.getDbType().compareTo(i2.getDbType()) * (asc ? 1 : -1);
             case "NAME":
             default:
-                return ((Instance)o1.getData()).getDbName().compareTo(((Instance)o2.getData()).getDbName()) * (asc ? 1 : -1);
+                return i1.getDbName().compareTo(i2.getDbName()) * (asc ? 1 : -1);
         }
     }
     
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015, CERN
+ * This software is distributed under the terms of the GNU General Public
+ * Licence version 3 (GPL Version 3), copied verbatim in the file "LICENSE".
+ * In applying this license, CERN does not waive the privileges and immunities
+ * granted to it by virtue of its status as Intergovernmental Organization
+ * or submit itself to any jurisdiction.
+ */
+
+package ch.cern.dbod.util;
+
+import ch.cern.dbod.ws.DBODWebService;
+import ch.cern.dbod.ws.DBODWebServicePortType;
+import ch.cern.dbod.ws.authentication.Authentication;
+import ch.cern.dbod.ws.authentication.AuthenticationSoap;
+import ch.cern.dbod.ws.egroups.EgroupsService;
+import ch.cern.dbod.ws.egroups.EgroupsWebService;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.ws.BindingProvider;
+
+/**
+ * Registry of SOAP port proxies. Creating a service parses its WSDL and builds
+ * all the JAX-WS metadata, so services and ports are created once and reused
+ * by every request. Ports are configured when they are created and their
+ * request context is never modified afterwards, so they can be shared
+ * between threads.
+ */
+public class WebServiceHelper {
+
+    /**
+     * Port to the DBOD web services.
+     */
+    private static DBODWebServicePortType dbodPort;
+
+    /**
+     * Authentication service, shared by all its ports.
+     */
+    private static Authentication authenticationService;
+
+    /**
+     * Ports to the authentication service, by credentials.
+     */
+    private static final ConcurrentHashMap<String, AuthenticationSoap> authenticationPorts = new ConcurrentHashMap<>();
+
+    /**
+     * E-groups service, shared by all its ports.
+     */
+    private static EgroupsWebService egroupsService;
+
+    /**
+     * Ports to the e-groups service, by credentials.
+     */
+    private static final ConcurrentHashMap<String, EgroupsService> egroupsPorts = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the port to the DBOD web services.
+     * @return port to the DBOD web services.
+     */
+    public static synchronized DBODWebServicePortType getDBODPort() {
+        if (dbodPort == null) {
+            DBODWebServicePortType port = new DBODWebService().getDBODWebServicePort();
+            configure(port, CommonConstants.WS_DBOD_ENDPOINT, null, null);
+            dbodPort = port;
+        }
+        return dbodPort;
+    }
+
+    /**
+     * Gets a port to the authentication service.
+     * @param user username to connect to web services.
+     * @param password password to connect to web services.
+     * @return port to the authentication service.
+     */
+    public static AuthenticationSoap getAuthenticationPort(String user, String password) {
+        String key = user + ":" + password;
+        AuthenticationSoap port = authenticationPorts.get(key);
+        if (port == null) {
+            synchronized (WebServiceHelper.class) {
+                port = authenticationPorts.get(key);
+                if (port == null) {
+                    if (authenticationService == null)
+                        authenticationService = new Authentication();
+                    port = authenticationService.getAuthenticationSoap();
+                    configure(port, CommonConstants.WS_AUTHENTICATION_ENDPOINT, user, password);
+                    authenticationPorts.put(key, port);
+                }
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Gets a port to the e-groups service.
+     * @param user username to connect to web services.
+     * @param password password to connect to web services.
+     * @return port to the e-groups service.
+     */
+    public static EgroupsService getEgroupsPort(String user, String password) {
+        String key = user + ":" + password;
+        EgroupsService port = egroupsPorts.get(key);
+        if (port == null) {
+            synchronized (WebServiceHelper.class) {
+                port = egroupsPorts.get(key);
+                if (port == null) {
+                    if (egroupsService == null)
+                        egroupsService = new EgroupsWebService();
+                    port = egroupsService.getEgroupsServiceSoap11();
+                    configure(port, CommonConstants.WS_EGROUPS_ENDPOINT, user, password);
+                    egroupsPorts.put(key, port);
+                }
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Sets the endpoint (if configured) and credentials of a port.
+     * @param port port to configure.
+     * @param endpointProperty name of the property with the endpoint address.
+     * @param user username to connect to web services, or null.
+     * @param password password to connect to web services, or null.
+     */
+    private static void configure(Object port, String endpointProperty, String user, String password) {
+        BindingProvider bp = (BindingProvider) port;
+        String endpoint = ConfigLoader.getProperty(endpointProperty);
+        if (endpoint != null && !endpoint.isEmpty())
+            bp.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpoint);
+        if (user != null) {
+            bp.getRequestContext().put(BindingProvider.USERNAME_PROPERTY, user);
+            bp.getRequestContext().put(BindingProvider.PASSWORD_PROPERTY, password);
+        }
+    }
+
+    /**
+     * Discards all the ports, so they are created again on next use.
+     * Called when the application is undeployed.
+     */
+    public static synchronized void reset() {
+        dbodPort = null;
+        authenticationService = null;
+        authenticationPorts.clear();
+        egroupsService = null;
+        egroupsPorts.clear();
+    }
+}